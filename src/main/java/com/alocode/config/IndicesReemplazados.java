@@ -0,0 +1,49 @@
+package com.alocode.config;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Borra al arrancar los índices que se reemplazaron por índices compuestos que empiezan por la misma columna
+ * o que ya no usa ninguna consulta. ddl-auto=update crea los nuevos pero nunca borra los viejos, que en las
+ * bases existentes seguirían costando una escritura más en cada alta o cambio de pedido y de detalle.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class IndicesReemplazados {
+    private static final List<String> INDICES = List.of(
+            // Reemplazados por idx_pedido_estado_id, idx_pedido_usuario_id e idx_pedido_caja_id
+            "idx_pedido_estado",
+            "idx_pedido_usuario",
+            "idx_pedido_caja",
+            // Sin uso: los cobrados por usuario se suman por idx_pedido_estado_fecha_pagado
+            "idx_pedido_usuario_pagado",
+            // Reemplazado por idx_detalle_pedido_producto_pedido
+            "idx_detalle_pedido_producto");
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${spring.jpa.properties.hibernate.default_schema:}")
+    private String esquema;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void borrar() {
+        String prefijo = esquema == null || esquema.isBlank() ? "" : esquema + ".";
+        for (String indice : INDICES) {
+            try {
+                jdbcTemplate.execute("DROP INDEX IF EXISTS " + prefijo + indice);
+            } catch (RuntimeException e) {
+                // No impide arrancar: el índice viejo solo cuesta escrituras de más
+                log.warn("No se pudo borrar el índice {}", indice, e);
+            }
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package com.alocode.controller;
 
-import java.util.List;
 import java.util.Optional;
 
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
@@ -11,9 +10,7 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
 import com.alocode.model.Caja;
-import com.alocode.model.Pedido;
 import com.alocode.model.Usuario;
-import com.alocode.model.enums.EstadoPedido;
 import com.alocode.service.CajaService;
 import com.alocode.service.PedidoService;
 
@@ -59,24 +56,19 @@ public class CajaController {
 
     @GetMapping("/cerrar")
     public String mostrarFormularioCerrarCaja(Model model, @AuthenticationPrincipal Usuario usuario) {
-        boolean cajaAbierta = cajaService.obtenerCajaAbiertaHoy().isPresent();
+        Optional<Caja> cajaOpt = cajaService.obtenerCajaAbiertaHoy();
+        boolean cajaAbierta = cajaOpt.isPresent();
         model.addAttribute("cajaAbierta", cajaAbierta);
         if (!cajaAbierta) {
             model.addAttribute("mensajeSinCaja", "No hay una caja abierta para hoy. No es posible cerrar caja.");
             return "cerrar-caja";
         }
-        Optional<Caja> cajaOpt = cajaService.obtenerCajaAbiertaHoy();
         Caja caja = cajaOpt.get();
-        // Obtener solo los pedidos PAGADOS de la caja actual
-        List<Pedido> pedidos = pedidoService.obtenerPedidosPorCajaYEstado(caja.getId(), EstadoPedido.PAGADO);
-        double totalVentas = pedidos.stream()
-                .mapToDouble(p -> p.getTotal() - p.getRecargo())
-                .sum();
-        double totalRecargos = pedidos.stream()
-                .mapToDouble(Pedido::getRecargo)
-                .sum();
-        double totalNeto = totalVentas + totalRecargos;
-        double montoCierre = caja.getMontoApertura() + totalNeto;
+        // Totales acumulados de los pedidos PAGADOS de la caja actual
+        double totalVentas = caja.getTotalVentas();
+        double totalRecargos = caja.getTotalRecargos();
+        double totalNeto = caja.getTotalCobrado();
+        double montoCierre = caja.getMontoActual();
         model.addAttribute("caja", caja);
         model.addAttribute("totalVentas", totalVentas);
         model.addAttribute("totalRecargos", totalRecargos);
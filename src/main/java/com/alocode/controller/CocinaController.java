@@ -0,0 +1,93 @@
+package com.alocode.controller;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Controller;
+import org.springframework.ui.Model;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.support.RedirectAttributes;
+
+import com.alocode.model.TicketCocina;
+import com.alocode.model.Usuario;
+import com.alocode.model.enums.EstadoPedido;
+import com.alocode.service.ColaCocinaService;
+import com.alocode.service.MyUserDetails;
+import com.alocode.service.PedidoService;
+import com.alocode.service.TableroPedidosService;
+
+import lombok.RequiredArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Controller
+@RequestMapping("/cocina")
+@RequiredArgsConstructor
+public class CocinaController {
+    private static final int TICKETS_EN_PANTALLA = 12;
+
+    private final ColaCocinaService colaCocinaService;
+    private final PedidoService pedidoService;
+    private final TableroPedidosService tableroPedidosService;
+
+    @GetMapping
+    public String pantallaCocina(Model model) {
+        model.addAttribute("ultimoEvento", tableroPedidosService.getUltimoId());
+        // El primero de los pendientes es el siguiente ticket
+        List<TicketCocina> pendientes = colaCocinaService.primeros(EstadoPedido.PENDIENTE, TICKETS_EN_PANTALLA + 1);
+        List<TicketCocina> preparando = colaCocinaService.primeros(EstadoPedido.PREPARANDO, TICKETS_EN_PANTALLA);
+        List<TicketCocina> visibles = new ArrayList<>(pendientes);
+        visibles.addAll(preparando);
+        model.addAttribute("siguiente", pendientes.isEmpty() ? null : pendientes.get(0));
+        model.addAttribute("enCola", pendientes.isEmpty() ? List.of() : pendientes.subList(1, pendientes.size()));
+        model.addAttribute("preparando", preparando);
+        model.addAttribute("detalles", colaCocinaService.detallesDe(visibles));
+        model.addAttribute("metricas", colaCocinaService.getMetricas());
+        model.addAttribute("ahora", System.currentTimeMillis());
+        return "cocina";
+    }
+
+    @GetMapping("/siguiente")
+    @ResponseBody
+    public ResponseEntity<TicketCocina> siguienteTicket() {
+        return ResponseEntity.of(colaCocinaService.siguiente());
+    }
+
+    @GetMapping("/metricas")
+    @ResponseBody
+    public List<ColaCocinaService.MetricaEstado> metricasCocina() {
+        return colaCocinaService.getMetricas();
+    }
+
+    @PostMapping("/{id}/preparar")
+    public String prepararPedido(@PathVariable Long id, @AuthenticationPrincipal UserDetails userDetails,
+            RedirectAttributes redirectAttributes) {
+        return cambiarEstado(id, EstadoPedido.PREPARANDO, userDetails, redirectAttributes);
+    }
+
+    @PostMapping("/{id}/listo")
+    public String pedidoListo(@PathVariable Long id, @AuthenticationPrincipal UserDetails userDetails,
+            RedirectAttributes redirectAttributes) {
+        return cambiarEstado(id, EstadoPedido.ENTREGANDO, userDetails, redirectAttributes);
+    }
+
+    private String cambiarEstado(Long id, EstadoPedido estado, UserDetails userDetails,
+            RedirectAttributes redirectAttributes) {
+        Usuario usuario = null;
+        if (userDetails instanceof MyUserDetails myUserDetails) {
+            usuario = myUserDetails.getUsuario();
+        }
+        if (usuario == null) {
+            redirectAttributes.addFlashAttribute("error", "No se pudo obtener el usuario autenticado");
+            return "redirect:/cocina";
+        }
+        try {
+            pedidoService.actualizarEstadoPedido(id, estado, usuario);
+            redirectAttributes.addFlashAttribute("success", "Pedido #" + id + " " + estado.name().toLowerCase());
+        } catch (Exception e) {
+            redirectAttributes.addFlashAttribute("error", e.getMessage());
+        }
+        return "redirect:/cocina";
+    }
+}
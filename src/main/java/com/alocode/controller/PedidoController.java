@@ -1,10 +1,12 @@
 package com.alocode.controller;
 
+import org.springframework.http.MediaType;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
 import com.alocode.model.DetallePedido;
@@ -35,14 +37,49 @@ public class PedidoController {
     private final ProductoService productoService;
     private final MesaService mesaService;
     private final CajaService cajaService;
+    private final HistorialPedidoService historialPedidoService;
+    private final UsuarioService usuarioService;
+    private final TableroPedidosService tableroPedidosService;
+    private final IdempotenciaPedidoService idempotenciaPedidoService;
 
     @GetMapping
     public String listarPedidos(Model model) {
+        // Antes de consultar: los eventos que lleguen mientras tanto se reenvían al conectar el tablero
+        model.addAttribute("ultimoEvento", tableroPedidosService.getUltimoId());
         List<Pedido> pedidos = pedidoService.obtenerPedidosPendientes();
         model.addAttribute("pedidos", pedidos);
+        model.addAttribute("plantillaPedido", plantillaPedido());
         return "pedidos";
     }
 
+    // El navegador manda Last-Event-ID al reconectarse; en la primera conexión el tablero pasa "desde"
+    @GetMapping(value = "/eventos", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter eventosPedidos(@RequestHeader(value = "Last-Event-ID", required = false) String ultimoId,
+            @RequestParam(required = false) String desde) {
+        return tableroPedidosService.suscribir(ultimoId != null ? ultimoId : desde);
+    }
+
+    @GetMapping("/historial")
+    public String historialPedidos(@ModelAttribute("filtro") HistorialPedidoService.FiltroHistorial filtro,
+            @RequestParam(required = false) Long antes, Model model) {
+        model.addAttribute("pagina", historialPedidoService.buscar(filtro, antes, null));
+        model.addAttribute("antes", antes);
+        model.addAttribute("estados", EstadoPedido.values());
+        model.addAttribute("tiposPedido", TipoPedido.values());
+        model.addAttribute("mesas", mesaService.obtenerTodasLasMesas());
+        model.addAttribute("usuarios", usuarioService.findAll());
+        return "historial-pedidos";
+    }
+
+    // Misma búsqueda en JSON; para la página siguiente se pasa antes = siguiente de la respuesta anterior
+    @GetMapping("/historial/api")
+    @ResponseBody
+    public HistorialPedidoService.PaginaHistorial historialPedidosApi(HistorialPedidoService.FiltroHistorial filtro,
+            @RequestParam(required = false) Long antes,
+            @RequestParam(required = false) Integer tamano) {
+        return historialPedidoService.buscar(filtro, antes, tamano);
+    }
+
     @GetMapping("/nuevo")
     public String mostrarFormularioNuevoPedido(Model model) {
         boolean cajaAbierta = cajaService.obtenerCajaAbiertaHoy().isPresent();
@@ -60,6 +97,7 @@ public class PedidoController {
     public String guardarPedido(@ModelAttribute Pedido pedido,
             @RequestParam List<Long> productos,
             @RequestParam List<Integer> cantidades,
+            @RequestParam(required = false) String claveIdempotencia,
             @AuthenticationPrincipal org.springframework.security.core.userdetails.UserDetails userDetails,
             RedirectAttributes redirectAttributes) {
         System.out.println("--- [LOG] Guardar Pedido ---");
@@ -86,24 +124,26 @@ public class PedidoController {
             } else {
                 // Es nuevo
                 // Crear detalles del pedido
+                // Los productos se cargan en lote dentro de crearPedido, aquí solo se arma la referencia
                 for (int i = 0; i < productos.size(); i++) {
-                    Producto producto = productoService.obtenerProductoPorId(productos.get(i))
-                            .orElseThrow(() -> new IllegalArgumentException("Producto no encontrado"));
+                    Producto producto = new Producto();
+                    producto.setId(productos.get(i));
 
                     DetallePedido detalle = new DetallePedido();
                     detalle.setProducto(producto);
                     detalle.setCantidad(cantidades.get(i));
-                    detalle.setPrecioUnitario(producto.getPrecio());
-                    detalle.setSubtotal(producto.getPrecio() * cantidades.get(i));
                     pedido.getDetalles().add(detalle);
                     System.out.println(
-                            "[LOG] Detalle agregado: Producto=" + producto.getNombre() + ", Cantidad="
+                            "[LOG] Detalle agregado: ProductoId=" + productos.get(i) + ", Cantidad="
                                     + cantidades.get(i));
                 }
                 if (usuario == null) {
                     throw new IllegalStateException("No se pudo obtener el usuario autenticado");
                 }
-                pedidoService.crearPedido(pedido, pedido.getDetalles(), usuario);
+                // Un doble envío del mismo formulario devuelve el pedido ya creado
+                Usuario autor = usuario;
+                idempotenciaPedidoService.crearUnaVez(usuario.getId(), claveIdempotencia,
+                        () -> pedidoService.crearPedido(pedido, pedido.getDetalles(), autor).getId());
                 redirectAttributes.addFlashAttribute("success", "Pedido creado exitosamente");
             }
         } catch (Exception e) {
@@ -182,6 +222,16 @@ public class PedidoController {
                 });
     }
 
+    // Fila de ejemplo (id 0) que el tablero copia para los pedidos que llegan por eventos
+    private Pedido plantillaPedido() {
+        Pedido pedido = new Pedido();
+        pedido.setId(0L);
+        pedido.setTipo(TipoPedido.LOCAL);
+        pedido.setEstado(EstadoPedido.PENDIENTE);
+        pedido.setTotal(0.0);
+        return pedido;
+    }
+
     @GetMapping("/{id}/comprobante")
     public void generarComprobante(@PathVariable Long id, HttpServletResponse response) throws IOException {
         Pedido pedido = pedidoService.obtenerPedidoPorId(id)
@@ -1,21 +1,32 @@
 package com.alocode.controller;
 
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.annotation.Secured;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 
+import com.alocode.service.ExportacionService;
 import com.alocode.service.ReporteService;
+import com.alocode.service.VentaDiariaService;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
 
 import com.alocode.util.ExcelExporter;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Date;
+import java.util.Optional;
 import java.time.LocalDateTime;
 
 @Controller
@@ -23,6 +34,8 @@ import java.time.LocalDateTime;
 @RequiredArgsConstructor
 public class ReporteController {
     private final ReporteService reporteService;
+    private final VentaDiariaService ventaDiariaService;
+    private final ExportacionService exportacionService;
     
     @GetMapping("/diario")
     public String reporteDiario(@RequestParam(value = "fecha", required = false) String fecha, Model model) {
@@ -59,7 +72,7 @@ public class ReporteController {
         }
         LocalDateTime inicioLdt = inicioDate.atStartOfDay();
         LocalDateTime finLdt = finDate.atStartOfDay();
-        ReporteService.ReporteSemanal reporte = reporteService.generarReporteSemanal(inicioLdt, finLdt);
+        ReporteService.ReporteSemanal reporte = reporteService.generarResumenSemanal(inicioLdt, finLdt);
         model.addAttribute("reporte", reporte);
         // Fechas para navegación
         model.addAttribute("semanaAnteriorInicio", inicioDate.minusWeeks(1).toString());
@@ -87,7 +100,7 @@ public class ReporteController {
         }
         LocalDateTime inicioLdt = inicioDate.atStartOfDay();
         LocalDateTime finLdt = finDate.atStartOfDay();
-        ReporteService.ReporteMensual reporte = reporteService.generarReporteMensual(inicioLdt, finLdt);
+        ReporteService.ReporteMensual reporte = reporteService.generarResumenMensual(inicioLdt, finLdt);
         model.addAttribute("reporte", reporte);
         // Fechas para navegación
         model.addAttribute("mesAnteriorInicio", inicioDate.minusMonths(1).withDayOfMonth(1).toString());
@@ -97,6 +110,92 @@ public class ReporteController {
         return "reporte-mensual";
     }
     
+    // Ranking de productos del rango; por defecto el mes actual
+    @GetMapping("/productos")
+    @Secured("ADMIN")
+    public String reporteProductos(@RequestParam(value = "inicio", required = false) String inicio,
+                                   @RequestParam(value = "fin", required = false) String fin,
+                                   Model model) {
+        LocalDate inicioDate;
+        LocalDate finDate;
+        if (inicio != null && fin != null) {
+            inicioDate = LocalDate.parse(inicio);
+            finDate = LocalDate.parse(fin);
+        } else {
+            inicioDate = LocalDate.now().withDayOfMonth(1);
+            finDate = inicioDate.withDayOfMonth(inicioDate.lengthOfMonth());
+        }
+        ReporteService.ReporteProductos reporte = reporteService.generarReporteProductos(
+                inicioDate.atStartOfDay(), finDate.atStartOfDay());
+        model.addAttribute("reporte", reporte);
+        model.addAttribute("inicio", inicioDate.toString());
+        model.addAttribute("fin", finDate.toString());
+        return "reporte-productos";
+    }
+    
+    // Pedidos tomados y cobrados por usuario en el rango; por defecto el mes actual
+    @GetMapping("/usuarios")
+    @Secured("ADMIN")
+    public String reporteUsuarios(@RequestParam(value = "inicio", required = false) String inicio,
+                                  @RequestParam(value = "fin", required = false) String fin,
+                                  Model model) {
+        LocalDate inicioDate;
+        LocalDate finDate;
+        if (inicio != null && fin != null) {
+            inicioDate = LocalDate.parse(inicio);
+            finDate = LocalDate.parse(fin);
+        } else {
+            inicioDate = LocalDate.now().withDayOfMonth(1);
+            finDate = inicioDate.withDayOfMonth(inicioDate.lengthOfMonth());
+        }
+        ReporteService.ReporteUsuarios reporte = reporteService.generarReporteUsuarios(
+                inicioDate.atStartOfDay(), finDate.atStartOfDay());
+        model.addAttribute("reporte", reporte);
+        model.addAttribute("inicio", inicioDate.toString());
+        model.addAttribute("fin", finDate.toString());
+        return "reporte-usuarios";
+    }
+    
+    // Pedidos por día de la semana y hora del rango; por defecto el mes actual
+    @GetMapping("/horarios")
+    @Secured("ADMIN")
+    public String reporteHorarios(@RequestParam(value = "inicio", required = false) String inicio,
+                                  @RequestParam(value = "fin", required = false) String fin,
+                                  Model model) {
+        LocalDate inicioDate;
+        LocalDate finDate;
+        if (inicio != null && fin != null) {
+            inicioDate = LocalDate.parse(inicio);
+            finDate = LocalDate.parse(fin);
+        } else {
+            inicioDate = LocalDate.now().withDayOfMonth(1);
+            finDate = inicioDate.withDayOfMonth(inicioDate.lengthOfMonth());
+        }
+        ReporteService.ReporteHorarios reporte = reporteService.generarReporteHorarios(
+                inicioDate.atStartOfDay(), finDate.atStartOfDay());
+        model.addAttribute("reporte", reporte);
+        model.addAttribute("inicio", inicioDate.toString());
+        model.addAttribute("fin", finDate.toString());
+        return "reporte-horarios";
+    }
+    
+    // Recalcula ventas_diarias desde los pedidos, de todo el historial o del rango indicado
+    @PostMapping("/ventas-diarias/reconstruir")
+    @Secured("ADMIN")
+    public String reconstruirVentasDiarias(@RequestParam(value = "inicio", required = false) String inicio,
+                                           @RequestParam(value = "fin", required = false) String fin,
+                                           RedirectAttributes redirectAttributes) {
+        try {
+            int dias = (inicio != null && fin != null)
+                    ? ventaDiariaService.reconstruir(LocalDate.parse(inicio), LocalDate.parse(fin))
+                    : ventaDiariaService.reconstruirTodo();
+            redirectAttributes.addFlashAttribute("success", "Ventas diarias reconstruidas: " + dias + " días");
+        } catch (Exception e) {
+            redirectAttributes.addFlashAttribute("error", e.getMessage());
+        }
+        return "redirect:/reportes/mensual";
+    }
+    
     @GetMapping("/exportar/diario")
     public void exportarReporteDiarioExcel(HttpServletResponse response,
                                            @RequestParam(value = "fecha", required = false) String fecha) {
@@ -127,12 +226,7 @@ public class ReporteController {
             inicioDate = inicioSemana.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
             finDate = finSemana.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
         }
-        LocalDateTime inicioLdt = inicioDate.atStartOfDay();
-        LocalDateTime finLdt = finDate.atStartOfDay();
-        ReporteService.ReporteSemanal reporte = reporteService.generarReporteSemanal(inicioLdt, finLdt);
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd-MM-yyyy");
-        String nombreArchivo = "reporte-semanal_" + inicioDate.format(formatter) + "_a_" + finDate.format(formatter);
-        ExcelExporter.exportToExcel(reporte, nombreArchivo, response);
+        exportarExcel(ExportacionService.TipoExportacion.SEMANAL, inicioDate, finDate, response);
     }
 
     @GetMapping("/exportar/mensual")
@@ -150,13 +244,109 @@ public class ReporteController {
             inicioDate = inicioMes.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
             finDate = finMes.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
         }
-        LocalDateTime inicioLdt = inicioDate.atStartOfDay();
-        LocalDateTime finLdt = finDate.atStartOfDay();
-        ReporteService.ReporteMensual reporte = reporteService.generarReporteMensual(inicioLdt, finLdt);
-        // Nombre: reporte-mensual_YYYY-MM-01_a_YYYY-MM-<fin>
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd-MM-yyyy");
-        String nombreArchivo = "reporte-mensual_" + inicioDate.format(formatter) + "_a_" + finDate.format(formatter);
-        ExcelExporter.exportToExcel(reporte, nombreArchivo, response);
+        exportarExcel(ExportacionService.TipoExportacion.MENSUAL, inicioDate, finDate, response);
+    }
+
+    @GetMapping("/exportar/productos")
+    public void exportarReporteProductosExcel(HttpServletResponse response,
+                                              @RequestParam(value = "inicio", required = false) String inicio,
+                                              @RequestParam(value = "fin", required = false) String fin) {
+        LocalDate inicioDate;
+        LocalDate finDate;
+        if (inicio != null && fin != null) {
+            inicioDate = LocalDate.parse(inicio);
+            finDate = LocalDate.parse(fin);
+        } else {
+            inicioDate = LocalDate.now().withDayOfMonth(1);
+            finDate = inicioDate.withDayOfMonth(inicioDate.lengthOfMonth());
+        }
+        ReporteService.ReporteProductos reporte = reporteService.generarReporteProductos(
+                inicioDate.atStartOfDay(), finDate.atStartOfDay());
+        ExcelExporter.exportToExcel(reporte, "reporte-productos", response);
+    }
+
+    @GetMapping("/exportar/usuarios")
+    public void exportarReporteUsuariosExcel(HttpServletResponse response,
+                                             @RequestParam(value = "inicio", required = false) String inicio,
+                                             @RequestParam(value = "fin", required = false) String fin) {
+        LocalDate inicioDate;
+        LocalDate finDate;
+        if (inicio != null && fin != null) {
+            inicioDate = LocalDate.parse(inicio);
+            finDate = LocalDate.parse(fin);
+        } else {
+            inicioDate = LocalDate.now().withDayOfMonth(1);
+            finDate = inicioDate.withDayOfMonth(inicioDate.lengthOfMonth());
+        }
+        ReporteService.ReporteUsuarios reporte = reporteService.generarReporteUsuarios(
+                inicioDate.atStartOfDay(), finDate.atStartOfDay());
+        ExcelExporter.exportToExcel(reporte, "reporte-usuarios", response);
+    }
+
+    private void exportarExcel(ExportacionService.TipoExportacion tipo, LocalDate inicio, LocalDate fin,
+                               HttpServletResponse response) {
+        try {
+            response.setContentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+            response.setHeader("Content-Disposition", "attachment; filename=" + exportacionService.nombreArchivo(tipo, inicio, fin));
+            exportacionService.escribir(tipo, inicio, fin, response.getOutputStream());
+            response.getOutputStream().flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Exportación en segundo plano: se encola y se sigue su estado en /reportes/exportaciones/{id}
+    @PostMapping("/exportaciones")
+    public String solicitarExportacion(@RequestParam("tipo") ExportacionService.TipoExportacion tipo,
+                                       @RequestParam("inicio") String inicio,
+                                       @RequestParam("fin") String fin,
+                                       RedirectAttributes redirectAttributes) {
+        try {
+            ExportacionService.Exportacion exportacion = exportacionService.solicitar(tipo,
+                    LocalDate.parse(inicio), LocalDate.parse(fin));
+            return "redirect:/reportes/exportaciones/" + exportacion.getId();
+        } catch (IllegalStateException e) {
+            redirectAttributes.addFlashAttribute("error", e.getMessage());
+            return "redirect:/reportes/" + (tipo == ExportacionService.TipoExportacion.SEMANAL ? "semanal" : "mensual")
+                    + "?inicio=" + inicio + "&fin=" + fin;
+        }
+    }
+
+    @GetMapping("/exportaciones/{id}")
+    public String verExportacion(@PathVariable String id, Model model, RedirectAttributes redirectAttributes) {
+        return exportacionService.obtener(id)
+                .map(exportacion -> {
+                    model.addAttribute("exportacion", exportacion);
+                    return "exportacion";
+                })
+                .orElseGet(() -> {
+                    redirectAttributes.addFlashAttribute("error", "La exportación no existe o ya venció");
+                    return "redirect:/reportes/semanal";
+                });
+    }
+
+    @GetMapping("/exportaciones/{id}/estado")
+    @ResponseBody
+    public ResponseEntity<ExportacionService.Exportacion> estadoExportacion(@PathVariable String id) {
+        return ResponseEntity.of(exportacionService.obtener(id));
+    }
+
+    @GetMapping(value = "/exportaciones/{id}/eventos", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter eventosExportacion(@PathVariable String id) {
+        return exportacionService.suscribir(id);
+    }
+
+    @GetMapping("/exportaciones/{id}/descargar")
+    public ResponseEntity<Resource> descargarExportacion(@PathVariable String id) {
+        Optional<ExportacionService.Exportacion> exportacion = exportacionService.obtener(id);
+        Optional<Path> archivo = exportacionService.obtenerArchivo(id);
+        if (exportacion.isEmpty() || archivo.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + exportacion.get().getNombreArchivo())
+                .body(new FileSystemResource(archivo.get()));
     }
     
     // Métodos auxiliares para calcular fechas
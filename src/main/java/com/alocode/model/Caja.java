@@ -5,6 +5,8 @@ import lombok.*;
 import jakarta.persistence.*;
 import java.util.Date;
 
+import org.hibernate.annotations.DynamicUpdate;
+
 import com.alocode.model.enums.EstadoCaja;
 
 @Entity
@@ -16,6 +18,8 @@ import com.alocode.model.enums.EstadoCaja;
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
+// Solo se escriben las columnas modificadas, para no pisar los contadores que se actualizan con UPDATE atómicos
+@DynamicUpdate
 public class Caja {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -42,4 +46,44 @@ public class Caja {
     
     @Temporal(TemporalType.TIME)
     private Date horaCierre;
+    
+    // Contadores que se acumulan al pagar o cancelar pedidos de la caja (ver CajaService)
+    @Column(name = "pedidos_pagados")
+    private Integer pedidosPagados = 0;
+    
+    // Ventas sin recargos
+    @Column(name = "total_ventas")
+    private Double totalVentas = 0.0;
+    
+    @Column(name = "total_recargos")
+    private Double totalRecargos = 0.0;
+    
+    @Column(name = "pedidos_cancelados")
+    private Integer pedidosCancelados = 0;
+
+    public Integer getPedidosPagados() {
+        return pedidosPagados == null ? 0 : pedidosPagados;
+    }
+
+    public Double getTotalVentas() {
+        return totalVentas == null ? 0.0 : totalVentas;
+    }
+
+    public Double getTotalRecargos() {
+        return totalRecargos == null ? 0.0 : totalRecargos;
+    }
+
+    public Integer getPedidosCancelados() {
+        return pedidosCancelados == null ? 0 : pedidosCancelados;
+    }
+
+    // Ventas más recargos
+    public double getTotalCobrado() {
+        return getTotalVentas() + getTotalRecargos();
+    }
+
+    // Efectivo que debería haber en caja en este momento
+    public double getMontoActual() {
+        return (montoApertura == null ? 0.0 : montoApertura) + getTotalCobrado();
+    }
 }
\ No newline at end of file
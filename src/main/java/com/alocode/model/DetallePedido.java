@@ -6,7 +6,8 @@ import jakarta.persistence.*;
 @Entity
 @Table(name = "detalle_pedido", indexes = {
     @Index(name = "idx_detalle_pedido_pedido", columnList = "pedido_id"),
-    @Index(name = "idx_detalle_pedido_producto", columnList = "producto_id"),
+    // Para el agrupado por producto de los reportes; también sirve a las búsquedas solo por producto_id
+    @Index(name = "idx_detalle_pedido_producto_pedido", columnList = "producto_id, pedido_id"),
     @Index(name = "idx_detalle_pedido_producto_base", columnList = "producto_base_id")
 })
 @Data
@@ -0,0 +1,10 @@
+package com.alocode.model;
+
+// Fila de solo lectura de un detalle para el reporte diario, armada directamente en la consulta
+public record DetalleResumen(
+        Long pedidoId,
+        String productoNombre,
+        Integer cantidad,
+        Double precioUnitario,
+        Double subtotal) {
+}
@@ -11,9 +11,14 @@ import com.alocode.model.enums.TipoPedido;
 @Entity
 @Table(name = "pedidos", indexes = {
     @Index(name = "idx_pedido_fecha", columnList = "fecha"),
-    @Index(name = "idx_pedido_estado", columnList = "estado"),
-    @Index(name = "idx_pedido_usuario", columnList = "usuario_id"),
-    @Index(name = "idx_pedido_caja", columnList = "caja_id")
+    // Historial paginado por id: cada filtro busca en su índice desde el último id de la página anterior
+    @Index(name = "idx_pedido_estado_id", columnList = "estado, id"),
+    @Index(name = "idx_pedido_tipo_id", columnList = "tipo, id"),
+    @Index(name = "idx_pedido_mesa_id", columnList = "mesa_id, id"),
+    @Index(name = "idx_pedido_usuario_id", columnList = "usuario_id, id"),
+    @Index(name = "idx_pedido_caja_id", columnList = "caja_id, id"),
+    // Rangos de pedidos pagados en los reportes
+    @Index(name = "idx_pedido_estado_fecha_pagado", columnList = "estado, fecha_pagado")
 })
 @Data
 @NoArgsConstructor
@@ -0,0 +1,23 @@
+package com.alocode.model;
+
+import java.util.Date;
+
+import com.alocode.model.enums.EstadoPedido;
+import com.alocode.model.enums.TipoPedido;
+
+// Fila de solo lectura de un pedido para reportes, armada directamente en la consulta (sin entidades)
+public record PedidoResumen(
+        Long id,
+        Date fecha,
+        Date fechaPagado,
+        TipoPedido tipo,
+        EstadoPedido estado,
+        Double total,
+        Double recargo,
+        Integer mesaNumero,
+        String usuarioNombre) {
+
+    public PedidoResumen {
+        recargo = recargo == null ? 0.0 : recargo;
+    }
+}
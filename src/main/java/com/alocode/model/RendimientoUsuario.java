@@ -0,0 +1,26 @@
+package com.alocode.model;
+
+// Fila de solo lectura con lo que tomó y cobró un usuario en un rango, armada directamente en la consulta
+public record RendimientoUsuario(
+        Long usuarioId,
+        String nombre,
+        Long pedidosTomados,
+        Long pedidosCobrados,
+        Double totalCobrado,
+        // Promedio de segundos entre la toma del pedido y su cobro; null si no cobró ninguno
+        Double segundosPromedioCobro) {
+
+    public RendimientoUsuario {
+        pedidosTomados = pedidosTomados == null ? 0L : pedidosTomados;
+        pedidosCobrados = pedidosCobrados == null ? 0L : pedidosCobrados;
+        totalCobrado = totalCobrado == null ? 0.0 : totalCobrado;
+    }
+
+    public double ticketPromedio() {
+        return pedidosCobrados == 0 ? 0.0 : totalCobrado / pedidosCobrados;
+    }
+
+    public Double minutosPromedioCobro() {
+        return segundosPromedioCobro == null ? null : segundosPromedioCobro / 60.0;
+    }
+}
@@ -0,0 +1,21 @@
+package com.alocode.model;
+
+import java.util.Date;
+
+import com.alocode.model.enums.EstadoPedido;
+import com.alocode.model.enums.TipoPedido;
+
+// Lo que la cola de cocina necesita de un pedido abierto, armado directamente en la consulta
+public record TicketCocina(
+        Long id,
+        Date fecha,
+        EstadoPedido estado,
+        TipoPedido tipo,
+        Integer mesaNumero,
+        // Cantidad de líneas (detalles) del pedido
+        Long lineas) {
+
+    public TicketCocina {
+        lineas = lineas == null ? 0L : lineas;
+    }
+}
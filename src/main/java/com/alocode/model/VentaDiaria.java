@@ -0,0 +1,64 @@
+package com.alocode.model;
+
+import lombok.*;
+import jakarta.persistence.*;
+import java.time.LocalDate;
+
+// Resumen de ventas por día, se acumula al pagar o cancelar pedidos (ver VentaDiariaService)
+@Entity
+@Table(name = "ventas_diarias", uniqueConstraints = {
+    @UniqueConstraint(name = "uk_ventas_diarias_fecha", columnNames = "fecha")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class VentaDiaria {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // Día de pago para las ventas, día del pedido para las cancelaciones
+    @Column(nullable = false)
+    private LocalDate fecha;
+
+    @Column(nullable = false)
+    private Integer cantidadPedidos = 0;
+
+    // Ventas sin recargos
+    @Column(nullable = false)
+    private Double totalVentas = 0.0;
+
+    @Column(nullable = false)
+    private Double totalRecargos = 0.0;
+
+    // Desglose por tipo de pedido, totales con recargos incluidos
+    @Column(nullable = false)
+    private Integer pedidosMesa = 0;
+
+    @Column(nullable = false)
+    private Double totalMesa = 0.0;
+
+    @Column(nullable = false)
+    private Integer pedidosLocal = 0;
+
+    @Column(nullable = false)
+    private Double totalLocal = 0.0;
+
+    @Column(nullable = false)
+    private Integer pedidosDelivery = 0;
+
+    @Column(nullable = false)
+    private Double totalDelivery = 0.0;
+
+    @Column(nullable = false)
+    private Integer pedidosCancelados = 0;
+
+    public VentaDiaria(LocalDate fecha) {
+        this.fecha = fecha;
+    }
+
+    // Ventas más recargos
+    public double getTotalCobrado() {
+        return totalVentas + totalRecargos;
+    }
+}
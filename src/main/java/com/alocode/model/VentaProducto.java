@@ -0,0 +1,16 @@
+package com.alocode.model;
+
+// Fila de solo lectura con lo vendido de un producto en un rango, armada directamente en la consulta
+public record VentaProducto(
+        Long productoId,
+        String nombre,
+        Long unidades,
+        Double ingresos,
+        Double cantidadBaseConsumida) {
+
+    public VentaProducto {
+        unidades = unidades == null ? 0L : unidades;
+        ingresos = ingresos == null ? 0.0 : ingresos;
+        cantidadBaseConsumida = cantidadBaseConsumida == null ? 0.0 : cantidadBaseConsumida;
+    }
+}
@@ -1,6 +1,7 @@
 package com.alocode.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -24,4 +25,47 @@ public interface CajaRepository extends JpaRepository<Caja, Long> {
     Optional<Caja> findCajaAbiertaHoy();
 
     List<Caja> findByFechaBetween(Date inicio, Date fin);
+
+    List<Caja> findByEstado(EstadoCaja estado);
+
+    boolean existsByEstadoAndFechaBetween(EstadoCaja estado, Date inicio, Date fin);
+
+    // Cajas que quedaron abiertas de días anteriores (usa idx_caja_estado)
+    @Query("SELECT c FROM Caja c WHERE c.estado = 'ABIERTA' AND c.fecha < CURRENT_DATE ORDER BY c.fecha")
+    List<Caja> findCajasAbiertasDeDiasAnteriores();
+
+    // Contadores acumulados de la caja, actualizados sin leer la fila
+    @Modifying
+    @Query("UPDATE Caja c SET c.pedidosPagados = COALESCE(c.pedidosPagados, 0) + 1, " +
+           "c.totalVentas = COALESCE(c.totalVentas, 0.0) + :ventas, " +
+           "c.totalRecargos = COALESCE(c.totalRecargos, 0.0) + :recargos WHERE c.id = :id")
+    int registrarPago(@Param("id") Long id, @Param("ventas") Double ventas, @Param("recargos") Double recargos);
+
+    @Modifying
+    @Query("UPDATE Caja c SET c.pedidosCancelados = COALESCE(c.pedidosCancelados, 0) + :cantidad WHERE c.id = :id")
+    int registrarCancelaciones(@Param("id") Long id, @Param("cantidad") Integer cantidad);
+
+    @Modifying
+    @Query("UPDATE Caja c SET c.pedidosCancelados = COALESCE(c.pedidosCancelados, 0) + " +
+           "(SELECT CAST(COUNT(p) AS Integer) FROM Pedido p WHERE p.caja = c AND p.estado = 'PENDIENTE' AND p.fecha < :limite) " +
+           "WHERE c.id IN (SELECT p.caja.id FROM Pedido p WHERE p.estado = 'PENDIENTE' AND p.fecha < :limite)")
+    int registrarCancelacionesDePendientesAnterioresA(@Param("limite") Date limite);
+
+    // Calcula desde pedidos los contadores de las cajas que no los tienen (las anteriores a los contadores)
+    @Modifying
+    @Query("UPDATE Caja c SET " +
+           "c.pedidosPagados = (SELECT CAST(COUNT(p) AS Integer) FROM Pedido p WHERE p.caja = c AND p.estado = 'PAGADO'), " +
+           "c.totalVentas = (SELECT COALESCE(SUM(p.total - COALESCE(p.recargo, 0.0)), 0.0) FROM Pedido p " +
+           "WHERE p.caja = c AND p.estado = 'PAGADO'), " +
+           "c.totalRecargos = (SELECT COALESCE(SUM(COALESCE(p.recargo, 0.0)), 0.0) FROM Pedido p " +
+           "WHERE p.caja = c AND p.estado = 'PAGADO'), " +
+           "c.pedidosCancelados = (SELECT CAST(COUNT(p) AS Integer) FROM Pedido p WHERE p.caja = c AND p.estado = 'CANCELADO') " +
+           "WHERE c.pedidosPagados IS NULL OR c.totalVentas IS NULL OR c.totalRecargos IS NULL OR c.pedidosCancelados IS NULL")
+    int completarContadoresFaltantes();
+
+    @Modifying
+    @Query("UPDATE Caja c SET c.pedidosPagados = :pagados, c.totalVentas = :ventas, c.totalRecargos = :recargos, " +
+           "c.pedidosCancelados = :cancelados WHERE c.id = :id")
+    int actualizarContadores(@Param("id") Long id, @Param("pagados") Integer pagados, @Param("ventas") Double ventas,
+            @Param("recargos") Double recargos, @Param("cancelados") Integer cancelados);
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package com.alocode.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -8,6 +9,7 @@ import org.springframework.stereotype.Repository;
 import com.alocode.model.Mesa;
 import com.alocode.model.enums.EstadoMesa;
 
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 
@@ -25,4 +27,12 @@ public interface MesaRepository extends JpaRepository<Mesa, Long> {
     @Query("SELECT m FROM Mesa m WHERE (:q IS NULL OR CAST(m.numero AS string) LIKE %:q% OR LOWER(m.estado) LIKE LOWER(CONCAT('%', :q, '%')) ) ORDER BY m.numero")
     List<Mesa> buscarPorNumeroOEstado(@Param("q") String q);
 
+    // Libera las mesas de pedidos pendientes anteriores a la fecha límite, salvo que tengan un pedido abierto posterior
+    @Modifying
+    @Query("UPDATE Mesa m SET m.estado = 'DISPONIBLE' WHERE m.id IN (" +
+           "SELECT p.mesa.id FROM Pedido p WHERE p.estado = 'PENDIENTE' AND p.tipo = 'MESA' AND p.fecha < :limite) " +
+           "AND m.id NOT IN (SELECT p.mesa.id FROM Pedido p WHERE p.mesa IS NOT NULL AND p.fecha >= :limite " +
+           "AND p.estado IN ('PENDIENTE', 'PREPARANDO', 'ENTREGANDO'))")
+    int liberarMesasDePendientesAnterioresA(@Param("limite") Date limite);
+
 }
\ No newline at end of file
@@ -1,26 +1,70 @@
 package com.alocode.repository;
 
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+
+import com.alocode.model.DetalleResumen;
 import com.alocode.model.Pedido;
+import com.alocode.model.PedidoResumen;
+import com.alocode.model.TicketCocina;
 import com.alocode.model.enums.EstadoPedido;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface PedidoRepository extends JpaRepository<Pedido, Long> {
+    // Filas que el cursor trae por viaje a la base de datos
+    int TAMANO_LOTE_CURSOR = 500;
+
+    // Columnas de PedidoResumen; mesa y usuario con LEFT JOIN para no perder pedidos sin mesa
+    String SELECT_RESUMEN = "SELECT new com.alocode.model.PedidoResumen(p.id, p.fecha, p.fechaPagado, p.tipo, p.estado, " +
+           "p.total, p.recargo, m.numero, u.nombre) FROM Pedido p LEFT JOIN p.mesa m LEFT JOIN p.usuario u ";
+
+    // Columnas de TicketCocina; cada pedido con la cantidad de sus líneas
+    String SELECT_TICKET = "SELECT new com.alocode.model.TicketCocina(p.id, p.fecha, p.estado, p.tipo, m.numero, COUNT(d)) " +
+           "FROM Pedido p LEFT JOIN p.mesa m LEFT JOIN p.detalles d ";
 
-    List<Pedido> findAllByOrderByIdAsc();
+    // Tablero de pedidos abiertos: mesa, usuarios y caja vienen en la misma consulta. Lo que queda fuera
+    // del grafo (como los roles de los usuarios) no se carga hasta que se usa
+    @EntityGraph(attributePaths = {"mesa", "usuario", "usuarioPagado", "caja.usuario"})
+    @Query("SELECT p FROM Pedido p WHERE p.estado IN :estados ORDER BY p.id")
+    List<Pedido> findTableroByEstadoIn(@Param("estados") List<EstadoPedido> estados);
+
+    // Detalle, edición y comprobante: además trae los detalles con sus productos. No agregar otra colección
+    // (como los roles), porque repetiría las filas de detalles, que es una lista
+    @EntityGraph(attributePaths = {"mesa", "usuario", "usuarioPagado", "caja.usuario",
+            "detalles.producto.productoBase", "detalles.productoBase"})
+    @Query("SELECT p FROM Pedido p WHERE p.id = :id")
+    Optional<Pedido> findConDetallesById(@Param("id") Long id);
     
-    List<Pedido> findByEstadoIn(List<EstadoPedido> estados);
+    // Pedido bloqueado hasta el fin de la transacción, para cambiar su estado sin pisar otra cancelación o cobro
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT p FROM Pedido p WHERE p.id = :id")
+    Optional<Pedido> findParaActualizarById(@Param("id") Long id);
+
+    // Bloquea los pendientes que va a cancelar cancelarPendientesAnterioresA; devuelve sus ids
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT p.id FROM Pedido p WHERE p.estado = 'PENDIENTE' AND p.fecha < :limite")
+    List<Long> bloquearPendientesAnterioresA(@Param("limite") Date limite);
     
-    @Query("SELECT p FROM Pedido p WHERE p.estado = 'PENDIENTE' AND CAST(p.fecha AS date) < CURRENT_DATE")
-    List<Pedido> findPedidosPendientesDeDiasAnteriores();
+    @Modifying
+    @Query("UPDATE Pedido p SET p.estado = 'CANCELADO' WHERE p.estado = 'PENDIENTE' AND p.fecha < :limite")
+    int cancelarPendientesAnterioresA(@Param("limite") Date limite);
     
     @Query("SELECT p FROM Pedido p WHERE p.caja.id = :cajaId AND p.estado = 'PENDIENTE'")
     List<Pedido> findPedidosPendientesPorCaja(@Param("cajaId") Long cajaId);
@@ -30,6 +74,99 @@ public interface PedidoRepository extends JpaRepository<Pedido, Long> {
     
     List<Pedido> findByCajaIdAndEstado(Long cajaId, EstadoPedido estado);
     
-    List<Pedido> findByEstadoAndFechaPagadoBetweenOrderByIdAsc(EstadoPedido estado, LocalDateTime inicio, LocalDateTime fin);
+    long countByCajaIdAndEstado(Long cajaId, EstadoPedido estado);
+    
+    // Totales de una caja en una sola fila, sin cargar los pedidos
+    @Query("SELECT COUNT(p) AS cantidadPedidos, COALESCE(SUM(p.total), 0.0) AS totalCobrado, " +
+           "COALESCE(SUM(p.recargo), 0.0) AS totalRecargos FROM Pedido p WHERE p.caja.id = :cajaId AND p.estado = :estado")
+    TotalesCaja calcularTotalesPorCajaYEstado(@Param("cajaId") Long cajaId, @Param("estado") EstadoPedido estado);
+
+    // Lo mismo para varias cajas en una consulta agrupada; las cajas sin pedidos no aparecen
+    @Query("SELECT p.caja.id AS cajaId, COUNT(p) AS cantidadPedidos, COALESCE(SUM(p.total), 0.0) AS totalCobrado, " +
+           "COALESCE(SUM(p.recargo), 0.0) AS totalRecargos FROM Pedido p WHERE p.caja.id IN :cajaIds AND p.estado = :estado " +
+           "GROUP BY p.caja.id")
+    List<TotalesPorCaja> calcularTotalesPorCajasYEstado(@Param("cajaIds") Collection<Long> cajaIds,
+            @Param("estado") EstadoPedido estado);
+    
+    // Tickets de la cola de cocina (con la cantidad de líneas de cada pedido)
+    @Query(SELECT_TICKET + "WHERE p.estado IN :estados GROUP BY p.id, p.fecha, p.estado, p.tipo, m.numero")
+    List<TicketCocina> findTicketsCocinaByEstadoIn(@Param("estados") List<EstadoPedido> estados);
+
+    @Query(SELECT_TICKET + "WHERE p.id = :id GROUP BY p.id, p.fecha, p.estado, p.tipo, m.numero")
+    Optional<TicketCocina> findTicketCocinaById(@Param("id") Long id);
+
+    // Fila de un pedido para los eventos del tablero
+    @Query(SELECT_RESUMEN + "WHERE p.id = :id")
+    Optional<PedidoResumen> findResumenById(@Param("id") Long id);
+
+    // Pedidos pagados en [inicio, fin) como filas de solo lectura, sin cargar entidades
+    @Query(SELECT_RESUMEN + "WHERE p.estado = 'PAGADO' AND p.fechaPagado >= :inicio AND p.fechaPagado < :fin ORDER BY p.id")
+    List<PedidoResumen> findResumenPagadosEntre(@Param("inicio") LocalDateTime inicio, @Param("fin") LocalDateTime fin);
+
+    // Igual que findResumenPagadosEntre pero con un cursor para exportar; debe recorrerse dentro de una transacción
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + TAMANO_LOTE_CURSOR))
+    @Query(SELECT_RESUMEN + "WHERE p.estado = 'PAGADO' AND p.fechaPagado >= :inicio AND p.fechaPagado < :fin ORDER BY p.id")
+    Stream<PedidoResumen> streamResumenPagadosEntre(@Param("inicio") LocalDateTime inicio, @Param("fin") LocalDateTime fin);
+
+    // Detalles de los pedidos pagados en [inicio, fin), ordenados por pedido
+    @Query("SELECT new com.alocode.model.DetalleResumen(p.id, pr.nombre, d.cantidad, d.precioUnitario, d.subtotal) " +
+           "FROM DetallePedido d JOIN d.pedido p LEFT JOIN d.producto pr " +
+           "WHERE p.estado = 'PAGADO' AND p.fechaPagado >= :inicio AND p.fechaPagado < :fin ORDER BY p.id, d.id")
+    List<DetalleResumen> findDetallesResumenPagadosEntre(@Param("inicio") LocalDateTime inicio, @Param("fin") LocalDateTime fin);
+
+    // Detalles de varios pedidos en una consulta, para la pantalla de cocina
+    @Query("SELECT new com.alocode.model.DetalleResumen(p.id, pr.nombre, d.cantidad, d.precioUnitario, d.subtotal) " +
+           "FROM DetallePedido d JOIN d.pedido p LEFT JOIN d.producto pr WHERE p.id IN :ids ORDER BY p.id, d.id")
+    List<DetalleResumen> findDetallesResumenByPedidoIdIn(@Param("ids") List<Long> ids);
+
+    // Filas [día de pago, tipo, cantidad, total, recargos] de los pedidos pagados, para reconstruir ventas_diarias
+    @Query("SELECT CAST(p.fechaPagado AS LocalDate), p.tipo, COUNT(p), SUM(p.total), SUM(p.recargo) FROM Pedido p " +
+           "WHERE p.estado = 'PAGADO' AND p.fechaPagado >= :desde AND p.fechaPagado < :hasta " +
+           "GROUP BY CAST(p.fechaPagado AS LocalDate), p.tipo")
+    List<Object[]> sumarPagadosPorDiaYTipo(@Param("desde") Date desde, @Param("hasta") Date hasta);
+
+    // Filas [id de usuario, nombre, pedidos tomados] por fecha del pedido en [inicio, fin) (usa idx_pedido_fecha)
+    @Query("SELECT u.id, u.nombre, COUNT(p) FROM Pedido p JOIN p.usuario u " +
+           "WHERE p.fecha >= :inicio AND p.fecha < :fin GROUP BY u.id, u.nombre")
+    List<Object[]> contarTomadosPorUsuario(@Param("inicio") LocalDateTime inicio, @Param("fin") LocalDateTime fin);
+
+    // Filas [id de usuario, nombre, pedidos cobrados, total cobrado, segundos promedio hasta el cobro] por fecha
+    // de pago en [inicio, fin) (usa idx_pedido_estado_fecha_pagado)
+    @Query("SELECT u.id, u.nombre, COUNT(p), SUM(p.total), AVG((p.fechaPagado - p.fecha) BY SECOND) " +
+           "FROM Pedido p JOIN p.usuarioPagado u " +
+           "WHERE p.estado = 'PAGADO' AND p.fechaPagado >= :inicio AND p.fechaPagado < :fin GROUP BY u.id, u.nombre")
+    List<Object[]> sumarCobradosPorUsuario(@Param("inicio") LocalDateTime inicio, @Param("fin") LocalDateTime fin);
+
+    // Filas [día de la semana (1 = domingo), hora, cantidad, total] de los pedidos pagados en [inicio, fin)
+    @Query("SELECT EXTRACT(DAY OF WEEK FROM p.fechaPagado), EXTRACT(HOUR FROM p.fechaPagado), COUNT(p), SUM(p.total) " +
+           "FROM Pedido p WHERE p.estado = 'PAGADO' AND p.fechaPagado >= :inicio AND p.fechaPagado < :fin " +
+           "GROUP BY EXTRACT(DAY OF WEEK FROM p.fechaPagado), EXTRACT(HOUR FROM p.fechaPagado)")
+    List<Object[]> sumarPagadosPorDiaSemanaYHora(@Param("inicio") LocalDateTime inicio, @Param("fin") LocalDateTime fin);
+
+    // Filas [día del pedido, cantidad] de los pedidos cancelados
+    @Query("SELECT CAST(p.fecha AS LocalDate), COUNT(p) FROM Pedido p " +
+           "WHERE p.estado = 'CANCELADO' AND p.fecha >= :desde AND p.fecha < :hasta " +
+           "GROUP BY CAST(p.fecha AS LocalDate)")
+    List<Object[]> contarCanceladosPorDia(@Param("desde") Date desde, @Param("hasta") Date hasta);
+
+    // Filas [día del pedido, cantidad] de los pendientes que va a cancelar cancelarPendientesAnterioresA
+    @Query("SELECT CAST(p.fecha AS LocalDate), COUNT(p) FROM Pedido p " +
+           "WHERE p.estado = 'PENDIENTE' AND p.fecha < :limite GROUP BY CAST(p.fecha AS LocalDate)")
+    List<Object[]> contarPendientesAnterioresAPorDia(@Param("limite") Date limite);
+
+    interface TotalesCaja {
+        Long getCantidadPedidos();
+        // Suma de totales, recargos incluidos
+        Double getTotalCobrado();
+        Double getTotalRecargos();
+
+        default double getTotalVentas() {
+            return getTotalCobrado() - getTotalRecargos();
+        }
+    }
+
+    interface TotalesPorCaja extends TotalesCaja {
+        Long getCajaId();
+    }
 
 }
\ No newline at end of file
@@ -1,12 +1,18 @@
 package com.alocode.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.alocode.model.Producto;
+import com.alocode.model.VentaProducto;
+import com.alocode.model.enums.EstadoPedido;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 
@@ -27,4 +33,68 @@ public interface ProductoRepository extends JpaRepository<Producto, Long> {
     List<Producto> findByProductoBaseIsNotNullAndActivoTrue();
     
     List<Producto> findByProductoBaseId(Long productoBaseId);
-}
\ No newline at end of file
+
+    // Productos que guardan stock propio (todo lo que no es derivado)
+    List<Producto> findByProductoBaseIsNull();
+
+    // Carga en una sola consulta los productos de un pedido junto con su producto base
+    @Query("SELECT p FROM Producto p LEFT JOIN FETCH p.productoBase WHERE p.id IN :ids")
+    List<Producto> findAllByIdConProductoBase(@Param("ids") Collection<Long> ids);
+
+    // Reserva condicional: solo actualiza si hay stock libre suficiente (devuelve 0 filas si no alcanza)
+    @Modifying
+    @Query("UPDATE Producto p SET p.stockOcupado = COALESCE(p.stockOcupado, 0) + :cantidad " +
+           "WHERE p.id = :id AND p.stock - COALESCE(p.stockOcupado, 0) >= :cantidad")
+    int reservarStockSiDisponible(@Param("id") Long id, @Param("cantidad") Double cantidad);
+
+    @Modifying
+    @Query("UPDATE Producto p SET p.stockOcupado = GREATEST(COALESCE(p.stockOcupado, 0) - :cantidad, 0) " +
+           "WHERE p.id = :id")
+    int liberarStockReservado(@Param("id") Long id, @Param("cantidad") Double cantidad);
+
+    // Libera la reserva y descuenta el stock real en la misma sentencia
+    @Modifying
+    @Query("UPDATE Producto p SET p.stockOcupado = GREATEST(COALESCE(p.stockOcupado, 0) - :cantidad, 0), " +
+           "p.stock = GREATEST(p.stock - :cantidad, 0) WHERE p.id = :id")
+    int consumirStock(@Param("id") Long id, @Param("cantidad") Double cantidad);
+
+    // Usados por el libro de stock en memoria (LibroStock)
+    @Modifying
+    @Query("UPDATE Producto p SET p.stock = GREATEST(p.stock - :cantidad, 0) WHERE p.id = :id")
+    int descontarStock(@Param("id") Long id, @Param("cantidad") Double cantidad);
+
+    @Modifying
+    @Query("UPDATE Producto p SET p.stockOcupado = :stockOcupado WHERE p.id = :id")
+    int actualizarStockOcupado(@Param("id") Long id, @Param("stockOcupado") Double stockOcupado);
+
+    // Stock reservado por los pedidos en los estados indicados, agrupado por producto que guarda el stock
+    @Query("SELECT COALESCE(d.productoBase.id, d.producto.id), " +
+           "SUM(CASE WHEN d.productoBase IS NULL THEN d.cantidad * 1.0 ELSE d.cantidadBaseConsumida END) " +
+           "FROM DetallePedido d WHERE d.pedido.estado IN :estados " +
+           "GROUP BY COALESCE(d.productoBase.id, d.producto.id)")
+    List<Object[]> sumarStockReservadoPorProducto(@Param("estados") List<EstadoPedido> estados);
+
+    @Query("SELECT COALESCE(d.productoBase.id, d.producto.id), " +
+           "SUM(CASE WHEN d.productoBase IS NULL THEN d.cantidad * 1.0 ELSE d.cantidadBaseConsumida END) " +
+           "FROM DetallePedido d WHERE d.pedido.estado = 'PENDIENTE' AND d.pedido.fecha < :limite " +
+           "GROUP BY COALESCE(d.productoBase.id, d.producto.id)")
+    List<Object[]> sumarStockReservadoDePendientesAnterioresA(@Param("limite") Date limite);
+
+    // Unidades, ingresos y cantidad base consumida por producto vendido en pedidos pagados en [inicio, fin)
+    @Query("SELECT new com.alocode.model.VentaProducto(pr.id, pr.nombre, SUM(d.cantidad), SUM(d.subtotal), " +
+           "SUM(COALESCE(d.cantidadBaseConsumida, 0.0))) " +
+           "FROM DetallePedido d JOIN d.pedido p JOIN d.producto pr " +
+           "WHERE p.estado = 'PAGADO' AND p.fechaPagado >= :inicio AND p.fechaPagado < :fin " +
+           "GROUP BY pr.id, pr.nombre ORDER BY SUM(d.cantidad) DESC, pr.nombre")
+    List<VentaProducto> sumarVentasPorProducto(@Param("inicio") LocalDateTime inicio, @Param("fin") LocalDateTime fin);
+
+    // Lo mismo agrupado por el producto que guarda el stock: el base de los derivados o el propio producto
+    @Query("SELECT new com.alocode.model.VentaProducto(COALESCE(b.id, pr.id), COALESCE(b.nombre, pr.nombre), " +
+           "SUM(d.cantidad), SUM(d.subtotal), " +
+           "SUM(CASE WHEN b IS NULL THEN d.cantidad * 1.0 ELSE d.cantidadBaseConsumida END)) " +
+           "FROM DetallePedido d JOIN d.pedido p JOIN d.producto pr LEFT JOIN d.productoBase b " +
+           "WHERE p.estado = 'PAGADO' AND p.fechaPagado >= :inicio AND p.fechaPagado < :fin " +
+           "GROUP BY COALESCE(b.id, pr.id), COALESCE(b.nombre, pr.nombre) " +
+           "ORDER BY SUM(CASE WHEN b IS NULL THEN d.cantidad * 1.0 ELSE d.cantidadBaseConsumida END) DESC")
+    List<VentaProducto> sumarVentasPorProductoBase(@Param("inicio") LocalDateTime inicio, @Param("fin") LocalDateTime fin);
+}
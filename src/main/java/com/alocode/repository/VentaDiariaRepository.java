@@ -0,0 +1,44 @@
+package com.alocode.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.alocode.model.VentaDiaria;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface VentaDiariaRepository extends JpaRepository<VentaDiaria, Long> {
+
+    List<VentaDiaria> findByFechaBetweenOrderByFechaAsc(LocalDate inicio, LocalDate fin);
+
+    // Crea la fila del día en cero si todavía no existe, sin fallar si otra transacción la creó antes
+    @Modifying
+    @Query("INSERT INTO VentaDiaria (fecha, cantidadPedidos, totalVentas, totalRecargos, pedidosMesa, totalMesa, " +
+           "pedidosLocal, totalLocal, pedidosDelivery, totalDelivery, pedidosCancelados) " +
+           "VALUES (:fecha, 0, 0.0, 0.0, 0, 0.0, 0, 0.0, 0, 0.0, 0) ON CONFLICT (fecha) DO NOTHING")
+    int crearSiNoExiste(@Param("fecha") LocalDate fecha);
+
+    // Suma los incrementos sobre la fila del día, sin leerla
+    @Modifying
+    @Query("UPDATE VentaDiaria v SET v.cantidadPedidos = v.cantidadPedidos + :pagados, " +
+           "v.totalVentas = v.totalVentas + :ventas, v.totalRecargos = v.totalRecargos + :recargos, " +
+           "v.pedidosMesa = v.pedidosMesa + :pedidosMesa, v.totalMesa = v.totalMesa + :totalMesa, " +
+           "v.pedidosLocal = v.pedidosLocal + :pedidosLocal, v.totalLocal = v.totalLocal + :totalLocal, " +
+           "v.pedidosDelivery = v.pedidosDelivery + :pedidosDelivery, v.totalDelivery = v.totalDelivery + :totalDelivery, " +
+           "v.pedidosCancelados = v.pedidosCancelados + :cancelados WHERE v.fecha = :fecha")
+    int acumular(@Param("fecha") LocalDate fecha, @Param("pagados") Integer pagados,
+            @Param("ventas") Double ventas, @Param("recargos") Double recargos,
+            @Param("pedidosMesa") Integer pedidosMesa, @Param("totalMesa") Double totalMesa,
+            @Param("pedidosLocal") Integer pedidosLocal, @Param("totalLocal") Double totalLocal,
+            @Param("pedidosDelivery") Integer pedidosDelivery, @Param("totalDelivery") Double totalDelivery,
+            @Param("cancelados") Integer cancelados);
+
+    @Modifying
+    @Query("DELETE FROM VentaDiaria v WHERE v.fecha BETWEEN :inicio AND :fin")
+    int eliminarEntre(@Param("inicio") LocalDate inicio, @Param("fin") LocalDate fin);
+}
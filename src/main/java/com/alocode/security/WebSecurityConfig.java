@@ -68,11 +68,12 @@ public class WebSecurityConfig {
                         .requestMatchers("/login", "/css/**", "/js/**", "/images/**").permitAll()
 
                         //rutas de la secretaria y administrador en común
-                        .requestMatchers("/pedidos/**", "/reportes/diario").hasAnyAuthority("SECRETARIA", "ADMIN")
+                        .requestMatchers("/pedidos/**", "/cocina/**", "/reportes/diario").hasAnyAuthority("SECRETARIA", "ADMIN")
 
                         //rutas del administrador
                         .requestMatchers("/caja/**", "/productos/**", "/mesas/**", "/reportes/**").hasAuthority("ADMIN")
                         .requestMatchers("/admin/usuarios/**").hasAuthority("ADMIN")
+                        .requestMatchers("/actuator/**").hasAuthority("ADMIN")
 
                         //todas las demás rutas requieren autenticación
                         .anyRequest().authenticated()
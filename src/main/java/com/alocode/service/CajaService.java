@@ -1,8 +1,16 @@
 package com.alocode.service;
 
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import com.alocode.model.Caja;
 import com.alocode.model.Pedido;
@@ -10,20 +18,47 @@ import com.alocode.model.Usuario;
 import com.alocode.model.enums.EstadoCaja;
 import com.alocode.model.enums.EstadoMesa;
 import com.alocode.model.enums.EstadoPedido;
+import com.alocode.model.enums.TipoPedido;
 import com.alocode.repository.CajaRepository;
 import com.alocode.repository.PedidoRepository;
 import com.alocode.repository.MesaRepository;
 
+import java.time.LocalDate;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class CajaService {
     private final CajaRepository cajaRepository;
     private final PedidoRepository pedidoRepository;
     private final MesaRepository mesaRepository;
+    private final VentaDiariaService ventaDiariaService;
+
+    // Referencia al proxy para que verificarContadores corra en su propia transacción
+    @Autowired
+    @Lazy
+    private CajaService self;
+
+    // Caché de la caja abierta de hoy. Se invalida al abrir o cerrar caja y al cambiar sus contadores,
+    // y vence sola al cambiar el día. La generación evita guardar una lectura que empezó antes de invalidar.
+    private final AtomicLong generacionCaja = new AtomicLong();
+    private volatile CajaEnCache cajaEnCache;
+
+    private static final class CajaEnCache {
+        private final LocalDate dia;
+        private final long generacion;
+        private final Optional<Caja> caja;
+
+        private CajaEnCache(LocalDate dia, long generacion, Optional<Caja> caja) {
+            this.dia = dia;
+            this.generacion = generacion;
+            this.caja = caja;
+        }
+    }
 
     @Transactional
     public Caja abrirCaja(Double montoApertura, Usuario usuario) {
@@ -33,31 +68,10 @@ public class CajaService {
             throw new IllegalStateException("Ya hay una caja abierta hoy");
         }
 
-        // Buscar si existe alguna caja ABIERTA de días anteriores y cerrarla automáticamente
-        Optional<Caja> cajaAbiertaAnterior = cajaRepository.findAll().stream()
-                .filter(c -> c.getEstado() == EstadoCaja.ABIERTA && !esMismoDia(c.getFecha(), fechaActual))
-                .findFirst();
-        cajaAbiertaAnterior.ifPresent(caja -> {
-            // Calcular total de ventas de la caja anterior
-            List<Pedido> pedidos = pedidoRepository.findByCajaIdAndEstado(caja.getId(), EstadoPedido.PAGADO);
-            double totalVentas = pedidos.stream().mapToDouble(p -> p.getTotal() - p.getRecargo()).sum();
-            double totalRecargos = pedidos.stream().mapToDouble(Pedido::getRecargo).sum();
-            double totalNeto = totalVentas + totalRecargos;
-            caja.setMontoCierre(caja.getMontoApertura() + totalNeto);
-            caja.setEstado(EstadoCaja.CERRADA);
-            caja.setHoraCierre(new Date());
-            // Cancelar pedidos pendientes y liberar mesas si corresponde
-            List<Pedido> pedidosPendientes = pedidoRepository.findPedidosPendientesPorCaja(caja.getId());
-            pedidosPendientes.forEach(p -> {
-                p.setEstado(EstadoPedido.CANCELADO);
-                if (p.getTipo() != null && p.getTipo().name().equals("MESA") && p.getMesa() != null) {
-                    p.getMesa().setEstado(EstadoMesa.DISPONIBLE);
-                    mesaRepository.save(p.getMesa());
-                }
-            });
-            pedidoRepository.saveAll(pedidosPendientes);
-            cajaRepository.save(caja);
-        });
+        invalidarCajaAbierta();
+
+        // Cerrar automáticamente las cajas ABIERTAS de días anteriores
+        cajaRepository.findCajasAbiertasDeDiasAnteriores().forEach(this::cerrar);
 
         Caja caja = new Caja();
         caja.setFecha(fechaActual);
@@ -68,18 +82,6 @@ public class CajaService {
         return cajaRepository.save(caja);
     }
 
-    // Método utilitario para comparar si dos fechas son el mismo día (ignorando hora)
-    private boolean esMismoDia(Date fecha1, Date fecha2) {
-        if (fecha1 == null || fecha2 == null)
-            return false;
-        java.util.Calendar cal1 = java.util.Calendar.getInstance();
-        java.util.Calendar cal2 = java.util.Calendar.getInstance();
-        cal1.setTime(fecha1);
-        cal2.setTime(fecha2);
-        return cal1.get(java.util.Calendar.YEAR) == cal2.get(java.util.Calendar.YEAR)
-                && cal1.get(java.util.Calendar.DAY_OF_YEAR) == cal2.get(java.util.Calendar.DAY_OF_YEAR);
-    }
-
     @Transactional
     public Caja cerrarCaja(Long idCaja, Usuario usuario) {
         Caja caja = cajaRepository.findById(idCaja)
@@ -89,31 +91,191 @@ public class CajaService {
             throw new IllegalStateException("La caja ya está cerrada");
         }
 
-        // Calcular total de ventas
-        List<Pedido> pedidos = pedidoRepository.findByCajaIdAndEstado(idCaja, EstadoPedido.PAGADO);
-        double totalVentas = pedidos.stream().mapToDouble(p -> p.getTotal() - p.getRecargo()).sum();
-        double totalRecargos = pedidos.stream().mapToDouble(Pedido::getRecargo).sum();
-        double totalNeto = totalVentas + totalRecargos;
-        caja.setMontoCierre(caja.getMontoApertura() + totalNeto);
+        return cerrar(caja);
+    }
+
+    // Cierra la caja con sus contadores acumulados y cancela sus pedidos pendientes
+    private Caja cerrar(Caja caja) {
+        invalidarCajaAbierta();
+        caja.setMontoCierre(caja.getMontoActual());
         caja.setEstado(EstadoCaja.CERRADA);
         caja.setHoraCierre(new Date());
 
         // Cancelar pedidos pendientes y liberar mesas si corresponde
-        List<Pedido> pedidosPendientes = pedidoRepository.findPedidosPendientesPorCaja(idCaja);
+        List<Pedido> pedidosPendientes = pedidoRepository.findPedidosPendientesPorCaja(caja.getId());
         pedidosPendientes.forEach(p -> {
             p.setEstado(EstadoPedido.CANCELADO);
             // Liberar mesa si es pedido de mesa y tiene mesa asignada
-            if (p.getTipo() != null && p.getTipo().name().equals("MESA") && p.getMesa() != null) {
-                p.getMesa().setEstado(com.alocode.model.enums.EstadoMesa.DISPONIBLE);
+            if (p.getTipo() == TipoPedido.MESA && p.getMesa() != null) {
+                p.getMesa().setEstado(EstadoMesa.DISPONIBLE);
                 mesaRepository.save(p.getMesa());
             }
         });
         pedidoRepository.saveAll(pedidosPendientes);
+        registrarCancelaciones(caja.getId(), pedidosPendientes.size());
+        ventaDiariaService.registrarCancelaciones(pedidosPendientes);
         return cajaRepository.save(caja);
     }
 
+    // Se llama en la misma transacción que pasa el pedido a PAGADO
+    @Transactional
+    public void registrarPago(Pedido pedido) {
+        invalidarCajaAbierta();
+        cajaRepository.registrarPago(pedido.getCaja().getId(),
+                pedido.getTotal() - pedido.getRecargo(), pedido.getRecargo());
+    }
+
+    @Transactional
+    public void registrarCancelaciones(Long idCaja, int cantidad) {
+        if (cantidad > 0) {
+            invalidarCajaAbierta();
+            cajaRepository.registrarCancelaciones(idCaja, cantidad);
+        }
+    }
+
+    // Para cancelaciones en bloque de pendientes de días anteriores (antes de cambiarles el estado)
+    @Transactional
+    public void registrarCancelacionesDePendientesAnterioresA(Date limite) {
+        invalidarCajaAbierta();
+        cajaRepository.registrarCancelacionesDePendientesAnterioresA(limite);
+    }
+
+    /**
+     * Recalcula los contadores de la caja desde la tabla de pedidos y los compara con los acumulados.
+     * Si corregir es true y hay diferencias, los contadores se reemplazan por los recalculados.
+     */
+    @Transactional
+    public VerificacionContadores verificarContadores(Long idCaja, boolean corregir) {
+        Caja caja = cajaRepository.findById(idCaja)
+                .orElseThrow(() -> new IllegalArgumentException("Caja no encontrada"));
+        PedidoRepository.TotalesCaja totales = calcularTotalesPagados(idCaja);
+        VerificacionContadores verificacion = new VerificacionContadores(caja,
+                totales.getCantidadPedidos().intValue(),
+                totales.getTotalVentas(),
+                totales.getTotalRecargos(),
+                (int) pedidoRepository.countByCajaIdAndEstado(idCaja, EstadoPedido.CANCELADO));
+        if (verificacion.hayDiferencias()) {
+            log.warn("Contadores de la caja {} desfasados: {}", idCaja, verificacion);
+            if (corregir) {
+                invalidarCajaAbierta();
+                cajaRepository.actualizarContadores(idCaja, verificacion.getPedidosPagados(),
+                        verificacion.getTotalVentas(), verificacion.getTotalRecargos(),
+                        verificacion.getPedidosCancelados());
+            }
+        }
+        return verificacion;
+    }
+
+    // Una sola vez por caja: las que quedaron sin contadores se completan en una sentencia
+    @Transactional
+    public int completarContadoresFaltantes() {
+        int completadas = cajaRepository.completarContadoresFaltantes();
+        if (completadas > 0) {
+            invalidarCajaAbierta();
+            log.info("Contadores calculados desde pedidos para {} cajas", completadas);
+        }
+        return completadas;
+    }
+
+    // Al arrancar se completan las cajas sin contadores y se corrigen las abiertas
+    @EventListener(ApplicationReadyEvent.class)
+    public void verificarCajasAbiertas() {
+        self.completarContadoresFaltantes();
+        cajaRepository.findByEstado(EstadoCaja.ABIERTA)
+                .forEach(caja -> self.verificarContadores(caja.getId(), true));
+    }
+
+    // Revisión periódica de las cajas abiertas, solo informa las diferencias
+    @Scheduled(fixedDelayString = "${alopos.caja.verificacion-ms:3600000}", initialDelayString = "${alopos.caja.verificacion-ms:3600000}")
+    public void revisarCajasAbiertas() {
+        cajaRepository.findByEstado(EstadoCaja.ABIERTA)
+                .forEach(caja -> self.verificarContadores(caja.getId(), false));
+    }
+
+    // Cantidad de pedidos pagados, total cobrado y recargos de la caja, calculados en la base de datos
+    public PedidoRepository.TotalesCaja calcularTotalesPagados(Long idCaja) {
+        return pedidoRepository.calcularTotalesPorCajaYEstado(idCaja, EstadoPedido.PAGADO);
+    }
+
+    // Contadores registrados frente a los recalculados desde pedidos
+    public static class VerificacionContadores {
+        private static final double TOLERANCIA = 0.005;
+
+        private final Caja caja;
+        private final int pedidosPagados;
+        private final double totalVentas;
+        private final double totalRecargos;
+        private final int pedidosCancelados;
+
+        public VerificacionContadores(Caja caja, int pedidosPagados, double totalVentas, double totalRecargos,
+                int pedidosCancelados) {
+            this.caja = caja;
+            this.pedidosPagados = pedidosPagados;
+            this.totalVentas = totalVentas;
+            this.totalRecargos = totalRecargos;
+            this.pedidosCancelados = pedidosCancelados;
+        }
+
+        public boolean hayDiferencias() {
+            return caja.getPedidosPagados() != pedidosPagados
+                    || caja.getPedidosCancelados() != pedidosCancelados
+                    || Math.abs(caja.getTotalVentas() - totalVentas) > TOLERANCIA
+                    || Math.abs(caja.getTotalRecargos() - totalRecargos) > TOLERANCIA;
+        }
+
+        public Caja getCaja() {
+            return caja;
+        }
+
+        public int getPedidosPagados() {
+            return pedidosPagados;
+        }
+
+        public double getTotalVentas() {
+            return totalVentas;
+        }
+
+        public double getTotalRecargos() {
+            return totalRecargos;
+        }
+
+        public int getPedidosCancelados() {
+            return pedidosCancelados;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("pagados %d/%d, ventas %.2f/%.2f, recargos %.2f/%.2f, cancelados %d/%d (registrado/recalculado)",
+                    caja.getPedidosPagados(), pedidosPagados, caja.getTotalVentas(), totalVentas,
+                    caja.getTotalRecargos(), totalRecargos, caja.getPedidosCancelados(), pedidosCancelados);
+        }
+    }
+
     public Optional<Caja> obtenerCajaAbiertaHoy() {
-        return cajaRepository.findCajaAbiertaHoy();
+        LocalDate hoy = LocalDate.now();
+        long generacion = generacionCaja.get();
+        CajaEnCache enCache = cajaEnCache;
+        if (enCache != null && enCache.generacion == generacion && enCache.dia.equals(hoy)) {
+            return enCache.caja;
+        }
+        Optional<Caja> caja = cajaRepository.findCajaAbiertaHoy();
+        if (generacionCaja.get() == generacion) {
+            cajaEnCache = new CajaEnCache(hoy, generacion, caja);
+        }
+        return caja;
+    }
+
+    // Invalida ahora y otra vez al confirmar, para que nadie guarde en caché el estado previo al commit
+    private void invalidarCajaAbierta() {
+        generacionCaja.incrementAndGet();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    generacionCaja.incrementAndGet();
+                }
+            });
+        }
     }
 
 }
\ No newline at end of file
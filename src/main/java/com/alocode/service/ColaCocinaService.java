@@ -0,0 +1,276 @@
+package com.alocode.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.alocode.model.DetalleResumen;
+import com.alocode.model.TicketCocina;
+import com.alocode.model.enums.EstadoPedido;
+import com.alocode.model.enums.TipoPedido;
+import com.alocode.repository.PedidoRepository;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Cola de cocina en memoria con los pedidos PENDIENTE y PREPARANDO, ordenados por prioridad. La
+ * prioridad es la fecha del pedido adelantada según el tipo y la cantidad de líneas: como no depende
+ * de la hora actual, el orden no cambia con el tiempo y cada pantalla toma el siguiente ticket en
+ * O(log n) sin consultar la base de datos. Se arma al arrancar y se actualiza al confirmar cada cambio
+ * de un pedido; también lleva el tiempo que pasan los pedidos en cada estado.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ColaCocinaService {
+    private static final List<EstadoPedido> ESTADOS_COLA = List.of(EstadoPedido.PENDIENTE, EstadoPedido.PREPARANDO);
+
+    private final PedidoRepository pedidoRepository;
+
+    @Value("${alopos.cocina.adelanto-delivery-min:10}")
+    private long adelantoDeliveryMin;
+
+    @Value("${alopos.cocina.adelanto-mesa-min:5}")
+    private long adelantoMesaMin;
+
+    @Value("${alopos.cocina.adelanto-local-min:0}")
+    private long adelantoLocalMin;
+
+    @Value("${alopos.cocina.adelanto-por-linea-seg:60}")
+    private long adelantoPorLineaSeg;
+
+    private static final Comparator<Entrada> POR_PRIORIDAD =
+            Comparator.comparingLong((Entrada e) -> e.clave).thenComparingLong(e -> e.ticket.id());
+
+    private final Map<EstadoPedido, TreeSet<Entrada>> colas = new EnumMap<>(EstadoPedido.class);
+    private final Map<Long, Entrada> porId = new HashMap<>();
+    private final Map<EstadoPedido, Permanencia> permanencias = new EnumMap<>(EstadoPedido.class);
+    // Ordena las relecturas de la base de datos con su aplicación en la cola
+    private final Object lecturas = new Object();
+
+    {
+        for (EstadoPedido estado : ESTADOS_COLA) {
+            colas.put(estado, new TreeSet<>(POR_PRIORIDAD));
+            permanencias.put(estado, new Permanencia());
+        }
+    }
+
+    private static final class Entrada {
+        private final TicketCocina ticket;
+        private final long clave;
+        // Desde cuándo está el pedido en su estado actual
+        private final long desde;
+
+        private Entrada(TicketCocina ticket, long clave, long desde) {
+            this.ticket = ticket;
+            this.clave = clave;
+            this.desde = desde;
+        }
+    }
+
+    private static final class Permanencia {
+        private long salidas;
+        private long totalMs;
+        private long maximoMs;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void inicializar() {
+        reconstruir();
+    }
+
+    // Vuelve a leer los pedidos abiertos; las métricas de permanencia se conservan
+    public void reconstruir() {
+        int cantidad;
+        synchronized (lecturas) {
+            List<TicketCocina> tickets = pedidoRepository.findTicketsCocinaByEstadoIn(ESTADOS_COLA);
+            long ahora = System.currentTimeMillis();
+            synchronized (this) {
+                colas.values().forEach(TreeSet::clear);
+                porId.clear();
+                // De los que ya estaban en preparación no se sabe desde cuándo; se cuenta desde ahora
+                tickets.forEach(ticket -> agregar(ticket, ticket.estado() == EstadoPedido.PENDIENTE
+                        ? inicioDe(ticket, ahora) : ahora));
+            }
+            cantidad = tickets.size();
+        }
+        log.info("Cola de cocina armada con {} pedidos", cantidad);
+    }
+
+    /*
+     * Relee el pedido al confirmar la transacción y lo mueve, saca o agrega en la cola. La lectura y
+     * su aplicación van juntas bajo el bloqueo de lecturas: si dos confirmaciones del mismo pedido
+     * llegan en otro orden, la que se aplica última leyó último y trae el estado más reciente. Las
+     * pantallas que consultan la cola no esperan por esa lectura.
+     */
+    public void actualizar(Long pedidoId) {
+        alConfirmar(() -> {
+            synchronized (lecturas) {
+                aplicar(pedidoId, pedidoRepository.findTicketCocinaById(pedidoId).orElse(null));
+            }
+        });
+    }
+
+    // Para cambios en bloque, como la cancelación de pendientes de días anteriores
+    public void reconstruirAlConfirmar() {
+        alConfirmar(this::reconstruir);
+    }
+
+    // Pedido PENDIENTE con más prioridad, el que la cocina debe empezar
+    public synchronized Optional<TicketCocina> siguiente() {
+        TreeSet<Entrada> pendientes = colas.get(EstadoPedido.PENDIENTE);
+        return pendientes.isEmpty() ? Optional.empty() : Optional.of(pendientes.first().ticket);
+    }
+
+    // Los primeros pedidos de un estado, en orden de prioridad
+    public synchronized List<TicketCocina> primeros(EstadoPedido estado, int cantidad) {
+        List<TicketCocina> tickets = new ArrayList<>();
+        Iterator<Entrada> it = colas.get(estado).iterator();
+        while (it.hasNext() && tickets.size() < cantidad) {
+            tickets.add(it.next().ticket);
+        }
+        return tickets;
+    }
+
+    // Detalles de los tickets que se muestran, agrupados por pedido
+    public Map<Long, List<DetalleResumen>> detallesDe(List<TicketCocina> tickets) {
+        if (tickets.isEmpty()) {
+            return Map.of();
+        }
+        return pedidoRepository.findDetallesResumenByPedidoIdIn(tickets.stream().map(TicketCocina::id).toList())
+                .stream()
+                .collect(Collectors.groupingBy(DetalleResumen::pedidoId));
+    }
+
+    public synchronized List<MetricaEstado> getMetricas() {
+        long ahora = System.currentTimeMillis();
+        List<MetricaEstado> metricas = new ArrayList<>();
+        for (EstadoPedido estado : ESTADOS_COLA) {
+            Permanencia p = permanencias.get(estado);
+            long esperaMasLarga = colas.get(estado).stream().mapToLong(e -> ahora - e.desde).max().orElse(0);
+            metricas.add(new MetricaEstado(estado, colas.get(estado).size(), p.salidas,
+                    p.salidas == 0 ? 0 : p.totalMs / p.salidas / 1000, p.maximoMs / 1000, esperaMasLarga / 1000));
+        }
+        return metricas;
+    }
+
+    private synchronized void aplicar(Long pedidoId, TicketCocina ticket) {
+        long ahora = System.currentTimeMillis();
+        Entrada anterior = porId.remove(pedidoId);
+        if (anterior != null) {
+            colas.get(anterior.ticket.estado()).remove(anterior);
+        }
+        boolean enCola = ticket != null && ESTADOS_COLA.contains(ticket.estado());
+        if (anterior != null && (!enCola || ticket.estado() != anterior.ticket.estado())) {
+            // Dejó el estado en que estaba: se registra cuánto tiempo pasó ahí
+            registrarPermanencia(anterior.ticket.estado(), ahora - anterior.desde);
+        }
+        if (enCola) {
+            boolean mismoEstado = anterior != null && anterior.ticket.estado() == ticket.estado();
+            agregar(ticket, mismoEstado ? anterior.desde
+                    : ticket.estado() == EstadoPedido.PENDIENTE ? inicioDe(ticket, ahora) : ahora);
+        }
+    }
+
+    private void agregar(TicketCocina ticket, long desde) {
+        Entrada entrada = new Entrada(ticket, clave(ticket), desde);
+        colas.get(ticket.estado()).add(entrada);
+        porId.put(ticket.id(), entrada);
+    }
+
+    private void registrarPermanencia(EstadoPedido estado, long ms) {
+        Permanencia p = permanencias.get(estado);
+        p.salidas++;
+        p.totalMs += ms;
+        p.maximoMs = Math.max(p.maximoMs, ms);
+    }
+
+    // Menor clave, más prioridad: la fecha del pedido menos el adelanto por tipo y por líneas
+    private long clave(TicketCocina ticket) {
+        long adelantoMin = ticket.tipo() == TipoPedido.DELIVERY ? adelantoDeliveryMin
+                : ticket.tipo() == TipoPedido.MESA ? adelantoMesaMin : adelantoLocalMin;
+        return inicioDe(ticket, System.currentTimeMillis()) - adelantoMin * 60_000
+                - ticket.lineas() * adelantoPorLineaSeg * 1000;
+    }
+
+    private static long inicioDe(TicketCocina ticket, long ahora) {
+        return ticket.fecha() != null ? ticket.fecha().getTime() : ahora;
+    }
+
+    private void alConfirmar(Runnable accion) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            accion.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                try {
+                    accion.run();
+                } catch (RuntimeException e) {
+                    log.warn("No se pudo actualizar la cola de cocina", e);
+                }
+            }
+        });
+    }
+
+    // Pedidos en un estado y tiempo que pasan en él; los tiempos en segundos
+    public static class MetricaEstado {
+        private final EstadoPedido estado;
+        private final int enCola;
+        private final long salidas;
+        private final long promedioSegundos;
+        private final long maximoSegundos;
+        private final long esperaMasLargaSegundos;
+
+        public MetricaEstado(EstadoPedido estado, int enCola, long salidas, long promedioSegundos,
+                long maximoSegundos, long esperaMasLargaSegundos) {
+            this.estado = estado;
+            this.enCola = enCola;
+            this.salidas = salidas;
+            this.promedioSegundos = promedioSegundos;
+            this.maximoSegundos = maximoSegundos;
+            this.esperaMasLargaSegundos = esperaMasLargaSegundos;
+        }
+
+        public EstadoPedido getEstado() {
+            return estado;
+        }
+
+        public int getEnCola() {
+            return enCola;
+        }
+
+        // Pedidos que ya salieron de este estado desde que arrancó el servidor
+        public long getSalidas() {
+            return salidas;
+        }
+
+        public long getPromedioSegundos() {
+            return promedioSegundos;
+        }
+
+        public long getMaximoSegundos() {
+            return maximoSegundos;
+        }
+
+        // Del pedido que lleva más tiempo en este estado ahora
+        public long getEsperaMasLargaSegundos() {
+            return esperaMasLargaSegundos;
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package com.alocode.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.alocode.util.ExcelExporter;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Exportaciones a Excel en segundo plano. Cada solicitud se encola en un pool acotado, el archivo
+ * se escribe en disco y se descarga cuando está listo. Una solicitud igual a otra que sigue en
+ * curso devuelve la misma exportación, y los archivos terminados se borran pasado un tiempo.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ExportacionService {
+    private static final long TIMEOUT_EVENTOS_MS = 10 * 60 * 1000L;
+
+    private final ReporteService reporteService;
+
+    @Value("${alopos.reportes.exportar.hilos:2}")
+    private int hilos;
+
+    @Value("${alopos.reportes.exportar.cola:10}")
+    private int cola;
+
+    @Value("${alopos.reportes.exportar.directorio:${java.io.tmpdir}/alopos-exportaciones}")
+    private String directorio;
+
+    @Value("${alopos.reportes.exportar.ttl-minutos:30}")
+    private long ttlMinutos;
+
+    @Value("${alopos.reportes.exportar.filas-streaming:2000}")
+    private int filasStreaming;
+
+    private ThreadPoolExecutor ejecutor;
+    private Path carpeta;
+
+    private final Map<String, Exportacion> exportaciones = new ConcurrentHashMap<>();
+    // Exportaciones pendientes o en proceso por tipo y rango, para no repetir la misma
+    private final Map<String, Exportacion> enCurso = new ConcurrentHashMap<>();
+
+    public enum TipoExportacion {
+        SEMANAL("reporte-semanal"),
+        MENSUAL("reporte-mensual");
+
+        private final String prefijo;
+
+        TipoExportacion(String prefijo) {
+            this.prefijo = prefijo;
+        }
+    }
+
+    public enum EstadoExportacion {
+        PENDIENTE,
+        EN_PROCESO,
+        TERMINADA,
+        ERROR
+    }
+
+    @PostConstruct
+    public void iniciar() throws IOException {
+        carpeta = Paths.get(directorio);
+        Files.createDirectories(carpeta);
+        // Archivos que quedaron de una ejecución anterior
+        try (Stream<Path> archivos = Files.list(carpeta)) {
+            archivos.forEach(this::borrar);
+        }
+        AtomicInteger numero = new AtomicInteger();
+        ejecutor = new ThreadPoolExecutor(hilos, hilos, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(cola),
+                tarea -> {
+                    Thread hilo = new Thread(tarea, "exportacion-" + numero.incrementAndGet());
+                    hilo.setDaemon(true);
+                    return hilo;
+                });
+    }
+
+    @PreDestroy
+    public void detener() {
+        ejecutor.shutdownNow();
+    }
+
+    public synchronized Exportacion solicitar(TipoExportacion tipo, LocalDate inicio, LocalDate fin) {
+        String clave = tipo + "|" + inicio + "|" + fin;
+        Exportacion existente = enCurso.get(clave);
+        if (existente != null) {
+            return existente;
+        }
+        Exportacion exportacion = new Exportacion(UUID.randomUUID().toString(), clave, tipo, inicio, fin,
+                nombreArchivo(tipo, inicio, fin));
+        exportaciones.put(exportacion.getId(), exportacion);
+        enCurso.put(clave, exportacion);
+        try {
+            ejecutor.execute(() -> procesar(exportacion));
+        } catch (RejectedExecutionException e) {
+            exportaciones.remove(exportacion.getId());
+            enCurso.remove(clave);
+            throw new IllegalStateException("Hay demasiadas exportaciones en curso, intente nuevamente en unos minutos");
+        }
+        return exportacion;
+    }
+
+    public Optional<Exportacion> obtener(String id) {
+        return Optional.ofNullable(exportaciones.get(id));
+    }
+
+    // Archivo de una exportación terminada
+    public Optional<Path> obtenerArchivo(String id) {
+        return obtener(id)
+                .filter(e -> e.getEstado() == EstadoExportacion.TERMINADA)
+                .map(e -> e.archivo);
+    }
+
+    // Eventos "estado" con la exportación cada vez que cambia, hasta que termina
+    public SseEmitter suscribir(String id) {
+        Exportacion exportacion = obtener(id)
+                .orElseThrow(() -> new IllegalArgumentException("Exportación no encontrada"));
+        SseEmitter emisor = new SseEmitter(TIMEOUT_EVENTOS_MS);
+        exportacion.suscriptores.add(emisor);
+        emisor.onCompletion(() -> exportacion.suscriptores.remove(emisor));
+        emisor.onTimeout(() -> exportacion.suscriptores.remove(emisor));
+        notificar(exportacion, emisor);
+        return emisor;
+    }
+
+    public String nombreArchivo(TipoExportacion tipo, LocalDate inicio, LocalDate fin) {
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd-MM-yyyy");
+        return tipo.prefijo + "_" + inicio.format(formatter) + "_a_" + fin.format(formatter) + ".xlsx";
+    }
+
+    // Escribe el Excel del reporte; lo usan tanto la descarga directa como las exportaciones en segundo plano
+    public void escribir(TipoExportacion tipo, LocalDate inicio, LocalDate fin, OutputStream salida) throws IOException {
+        Object reporte;
+        int cantidadPedidos;
+        if (tipo == TipoExportacion.SEMANAL) {
+            ReporteService.ReporteSemanal semanal = reporteService.generarResumenSemanal(
+                    inicio.atStartOfDay(), fin.atStartOfDay());
+            reporte = semanal;
+            cantidadPedidos = semanal.getCantidadPedidos();
+        } else {
+            ReporteService.ReporteMensual mensual = reporteService.generarResumenMensual(
+                    inicio.atStartOfDay(), fin.atStartOfDay());
+            reporte = mensual;
+            cantidadPedidos = mensual.getCantidadPedidos();
+        }
+        // Las filas de pedidos se leen del cursor a medida que se escriben
+        try {
+            reporteService.recorrerPedidosPagados(inicio.atStartOfDay(), fin.atStartOfDay(), pedidos -> {
+                try {
+                    ExcelExporter.escribir(reporte, pedidos, cantidadPedidos, filasStreaming, salida);
+                    return null;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${alopos.reportes.exportar.limpieza-ms:60000}")
+    public void limpiarVencidas() {
+        Instant limite = Instant.now().minus(Duration.ofMinutes(ttlMinutos));
+        exportaciones.values().removeIf(e -> {
+            if (e.terminada == null || e.terminada.isAfter(limite)) {
+                return false;
+            }
+            if (e.archivo != null) {
+                borrar(e.archivo);
+            }
+            return true;
+        });
+    }
+
+    private void procesar(Exportacion exportacion) {
+        long inicio = System.nanoTime();
+        cambiarEstado(exportacion, EstadoExportacion.EN_PROCESO);
+        Path archivo = null;
+        try {
+            archivo = Files.createTempFile(carpeta, "exportacion-", ".xlsx");
+            try (OutputStream salida = Files.newOutputStream(archivo)) {
+                escribir(exportacion.getTipo(), exportacion.getInicio(), exportacion.getFin(), salida);
+            }
+            exportacion.archivo = archivo;
+            log.info("Exportación {} {} a {} lista en {} ms", exportacion.getTipo(), exportacion.getInicio(),
+                    exportacion.getFin(), (System.nanoTime() - inicio) / 1_000_000);
+            cambiarEstado(exportacion, EstadoExportacion.TERMINADA);
+        } catch (Exception e) {
+            log.error("Error en la exportación {}", exportacion.getId(), e);
+            if (archivo != null) {
+                borrar(archivo);
+            }
+            exportacion.error = e.getMessage();
+            cambiarEstado(exportacion, EstadoExportacion.ERROR);
+        }
+    }
+
+    private void cambiarEstado(Exportacion exportacion, EstadoExportacion estado) {
+        exportacion.estado = estado;
+        if (estado == EstadoExportacion.TERMINADA || estado == EstadoExportacion.ERROR) {
+            exportacion.terminada = Instant.now();
+            enCurso.remove(exportacion.clave, exportacion);
+        }
+        exportacion.suscriptores.forEach(emisor -> notificar(exportacion, emisor));
+    }
+
+    private void notificar(Exportacion exportacion, SseEmitter emisor) {
+        try {
+            emisor.send(SseEmitter.event().name("estado").data(exportacion));
+            if (exportacion.isFinalizada()) {
+                emisor.complete();
+            }
+        } catch (IOException | IllegalStateException e) {
+            // El navegador cerró la conexión
+            exportacion.suscriptores.remove(emisor);
+        }
+    }
+
+    private void borrar(Path archivo) {
+        try {
+            Files.deleteIfExists(archivo);
+        } catch (IOException e) {
+            log.warn("No se pudo borrar {}", archivo, e);
+        }
+    }
+
+    // Estado de una exportación; los getters son los que se envían como JSON
+    public static class Exportacion {
+        private final String id;
+        private final String clave;
+        private final TipoExportacion tipo;
+        private final LocalDate inicio;
+        private final LocalDate fin;
+        private final String nombreArchivo;
+        private final Instant creada = Instant.now();
+        private volatile EstadoExportacion estado = EstadoExportacion.PENDIENTE;
+        private volatile Instant terminada;
+        private volatile String error;
+        private volatile Path archivo;
+        private final List<SseEmitter> suscriptores = new CopyOnWriteArrayList<>();
+
+        private Exportacion(String id, String clave, TipoExportacion tipo, LocalDate inicio, LocalDate fin,
+                String nombreArchivo) {
+            this.id = id;
+            this.clave = clave;
+            this.tipo = tipo;
+            this.inicio = inicio;
+            this.fin = fin;
+            this.nombreArchivo = nombreArchivo;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public TipoExportacion getTipo() {
+            return tipo;
+        }
+
+        public LocalDate getInicio() {
+            return inicio;
+        }
+
+        public LocalDate getFin() {
+            return fin;
+        }
+
+        public String getNombreArchivo() {
+            return nombreArchivo;
+        }
+
+        public Instant getCreada() {
+            return creada;
+        }
+
+        public EstadoExportacion getEstado() {
+            return estado;
+        }
+
+        public Instant getTerminada() {
+            return terminada;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public boolean isFinalizada() {
+            return estado == EstadoExportacion.TERMINADA || estado == EstadoExportacion.ERROR;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.alocode.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.alocode.model.PedidoResumen;
+import com.alocode.model.enums.EstadoPedido;
+import com.alocode.model.enums.TipoPedido;
+import com.alocode.repository.PedidoRepository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Historial de pedidos paginado por id (del más reciente al más antiguo). Cada página continúa desde
+ * el último id de la anterior en lugar de saltar filas con OFFSET, así la página 500 cuesta lo mismo
+ * que la primera. La consulta solo lleva los filtros usados, para que cada uno pueda usar su índice
+ * (columna, id) de la tabla pedidos.
+ */
+@Service
+@RequiredArgsConstructor
+public class HistorialPedidoService {
+    private final EntityManager entityManager;
+
+    @Value("${alopos.pedidos.historial.tamano-pagina:50}")
+    private int tamanoPagina;
+
+    @Value("${alopos.pedidos.historial.tamano-maximo:200}")
+    private int tamanoMaximo;
+
+    @Transactional(readOnly = true)
+    public PaginaHistorial buscar(FiltroHistorial filtro, Long antesDeId, Integer tamano) {
+        int limite = tamano == null ? tamanoPagina : Math.max(1, Math.min(tamano, tamanoMaximo));
+
+        List<String> condiciones = new ArrayList<>();
+        Map<String, Object> parametros = new LinkedHashMap<>();
+        agregar(condiciones, parametros, "p.estado = :estado", "estado", filtro.getEstado());
+        agregar(condiciones, parametros, "p.tipo = :tipo", "tipo", filtro.getTipo());
+        agregar(condiciones, parametros, "p.mesa.id = :mesaId", "mesaId", filtro.getMesaId());
+        agregar(condiciones, parametros, "p.caja.id = :cajaId", "cajaId", filtro.getCajaId());
+        agregar(condiciones, parametros, "p.usuario.id = :usuarioId", "usuarioId", filtro.getUsuarioId());
+        agregar(condiciones, parametros, "p.id < :antesDeId", "antesDeId", antesDeId);
+
+        String jpql = PedidoRepository.SELECT_RESUMEN
+                + (condiciones.isEmpty() ? "" : "WHERE " + String.join(" AND ", condiciones) + " ")
+                + "ORDER BY p.id DESC";
+        TypedQuery<PedidoResumen> consulta = entityManager.createQuery(jpql, PedidoResumen.class);
+        parametros.forEach(consulta::setParameter);
+        // Una fila de más solo para saber si hay página siguiente
+        List<PedidoResumen> pedidos = consulta.setMaxResults(limite + 1).getResultList();
+
+        boolean haySiguiente = pedidos.size() > limite;
+        if (haySiguiente) {
+            pedidos = pedidos.subList(0, limite);
+        }
+        Long siguiente = haySiguiente ? pedidos.get(pedidos.size() - 1).id() : null;
+        return new PaginaHistorial(pedidos, siguiente);
+    }
+
+    private static void agregar(List<String> condiciones, Map<String, Object> parametros,
+            String condicion, String nombre, Object valor) {
+        if (valor != null) {
+            condiciones.add(condicion);
+            parametros.put(nombre, valor);
+        }
+    }
+
+    // Filtros opcionales del historial; los nulos no se aplican
+    public static class FiltroHistorial {
+        private EstadoPedido estado;
+        private TipoPedido tipo;
+        private Long mesaId;
+        private Long cajaId;
+        private Long usuarioId;
+
+        public EstadoPedido getEstado() {
+            return estado;
+        }
+
+        public void setEstado(EstadoPedido estado) {
+            this.estado = estado;
+        }
+
+        public TipoPedido getTipo() {
+            return tipo;
+        }
+
+        public void setTipo(TipoPedido tipo) {
+            this.tipo = tipo;
+        }
+
+        public Long getMesaId() {
+            return mesaId;
+        }
+
+        public void setMesaId(Long mesaId) {
+            this.mesaId = mesaId;
+        }
+
+        public Long getCajaId() {
+            return cajaId;
+        }
+
+        public void setCajaId(Long cajaId) {
+            this.cajaId = cajaId;
+        }
+
+        public Long getUsuarioId() {
+            return usuarioId;
+        }
+
+        public void setUsuarioId(Long usuarioId) {
+            this.usuarioId = usuarioId;
+        }
+    }
+
+    // Una página del historial; siguiente es el id desde el que sigue la próxima (null en la última)
+    public static class PaginaHistorial {
+        private final List<PedidoResumen> pedidos;
+        private final Long siguiente;
+
+        public PaginaHistorial(List<PedidoResumen> pedidos, Long siguiente) {
+            this.pedidos = pedidos;
+            this.siguiente = siguiente;
+        }
+
+        public List<PedidoResumen> getPedidos() {
+            return pedidos;
+        }
+
+        public Long getSiguiente() {
+            return siguiente;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.alocode.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Claves de envío recientes del formulario de pedidos. El formulario genera una clave al abrirse; si
+ * la misma clave llega otra vez (doble clic, reintento del navegador) se devuelve el pedido que creó
+ * la primera en lugar de crear otro. Una repetición solo hace una lectura del mapa, sin bloqueos ni
+ * consultas; si la primera todavía se está procesando, espera su resultado. Las claves se olvidan
+ * pasado un tiempo.
+ */
+@Slf4j
+@Service
+public class IdempotenciaPedidoService {
+    private static final int LARGO_MAXIMO_CLAVE = 64;
+
+    @Value("${alopos.pedidos.idempotencia.ttl-minutos:10}")
+    private long ttlMinutos;
+
+    @Value("${alopos.pedidos.idempotencia.espera-segundos:30}")
+    private long esperaSegundos;
+
+    private final Map<String, Envio> envios = new ConcurrentHashMap<>();
+
+    private static final class Envio {
+        private final long creado = System.currentTimeMillis();
+        private final CompletableFuture<Long> pedidoId = new CompletableFuture<>();
+    }
+
+    // Resultado de un envío: el id del pedido y si ya se había creado con la misma clave
+    public record Resultado(Long pedidoId, boolean repetido) {
+    }
+
+    /**
+     * Crea el pedido una sola vez por clave. Sin clave (o con una inválida) se crea siempre. Si la
+     * creación falla la clave se libera, para que el mismo formulario pueda reintentarse.
+     */
+    public Resultado crearUnaVez(Long usuarioId, String clave, Supplier<Long> crear) {
+        if (clave == null || clave.isBlank() || clave.length() > LARGO_MAXIMO_CLAVE) {
+            return new Resultado(crear.get(), false);
+        }
+        String claveUsuario = usuarioId + ":" + clave;
+        Envio existente = envios.get(claveUsuario);
+        if (existente == null) {
+            Envio nuevo = new Envio();
+            existente = envios.putIfAbsent(claveUsuario, nuevo);
+            if (existente == null) {
+                return new Resultado(ejecutar(claveUsuario, nuevo, crear), false);
+            }
+        }
+        Long pedidoId = esperar(existente);
+        log.info("Envío repetido del pedido {} (clave {})", pedidoId, clave);
+        return new Resultado(pedidoId, true);
+    }
+
+    @Scheduled(fixedDelayString = "${alopos.pedidos.idempotencia.limpieza-ms:60000}")
+    public void limpiarVencidas() {
+        long limite = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(ttlMinutos);
+        envios.values().removeIf(envio -> envio.creado < limite && envio.pedidoId.isDone());
+    }
+
+    private Long ejecutar(String claveUsuario, Envio envio, Supplier<Long> crear) {
+        try {
+            Long pedidoId = crear.get();
+            envio.pedidoId.complete(pedidoId);
+            return pedidoId;
+        } catch (Throwable e) {
+            // También ante un Error: quien espera la misma clave no debe quedar colgado hasta el plazo
+            envios.remove(claveUsuario, envio);
+            envio.pedidoId.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private Long esperar(Envio envio) {
+        try {
+            return envio.pedidoId.get(esperaSegundos, TimeUnit.SECONDS);
+        } catch (ExecutionException | CompletionException e) {
+            // El primer envío falló: la repetición muestra el mismo error
+            if (e.getCause() instanceof RuntimeException causa) {
+                throw causa;
+            }
+            throw new IllegalStateException("No se pudo registrar el pedido", e.getCause());
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("El pedido todavía se está registrando, revise el listado de pedidos");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("No se pudo registrar el pedido");
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package com.alocode.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.alocode.model.Producto;
+import com.alocode.model.enums.EstadoPedido;
+import com.alocode.repository.ProductoRepository;
+
+import jakarta.annotation.PreDestroy;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Libro de stock en memoria, indexado por el id del producto que guarda el stock
+ * (el producto base para los derivados). Se activa con alopos.stock.ledger.enabled=true.
+ *
+ * Las reservas se resuelven en memoria y stock_ocupado se escribe en la tabla productos
+ * en lotes (write-behind). El consumo al pagar se escribe en el momento sobre stock, así que
+ * lo único que puede perderse en una caída es stock_ocupado, que al arrancar se reconstruye
+ * a partir de los detalles de los pedidos abiertos.
+ */
+@Component
+@ConditionalOnProperty(name = "alopos.stock.ledger.enabled", havingValue = "true")
+@RequiredArgsConstructor
+public class LibroStock {
+    // Punto fijo: 1 unidad = 1000, suficiente para factores como 0.25 o 0.125
+    private static final long ESCALA = 1000L;
+    private static final int FRANJAS = 64;
+
+    private static final List<EstadoPedido> ESTADOS_ABIERTOS = List.of(
+            EstadoPedido.PENDIENTE, EstadoPedido.PREPARANDO, EstadoPedido.ENTREGANDO);
+
+    private final ProductoRepository productoRepository;
+    private final PlatformTransactionManager transactionManager;
+
+    private final Map<Long, Saldo> saldos = new ConcurrentHashMap<>();
+    private final Set<Long> pendientes = ConcurrentHashMap.newKeySet();
+    private final ReentrantLock[] franjas = crearFranjas();
+
+    private static final class Saldo {
+        long stock;
+        long ocupado;
+    }
+
+    private static ReentrantLock[] crearFranjas() {
+        ReentrantLock[] locks = new ReentrantLock[FRANJAS];
+        for (int i = 0; i < FRANJAS; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        return locks;
+    }
+
+    private ReentrantLock franja(Long id) {
+        return franjas[(Long.hashCode(id) & 0x7fffffff) % FRANJAS];
+    }
+
+    private static long aUnidades(double cantidad) {
+        return Math.round(cantidad * ESCALA);
+    }
+
+    // Reconciliación al arrancar: stock desde la tabla, stock ocupado desde los pedidos abiertos
+    @EventListener(ApplicationReadyEvent.class)
+    public void cargar() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            Map<Long, Long> reservado = new HashMap<>();
+            for (Object[] fila : productoRepository.sumarStockReservadoPorProducto(ESTADOS_ABIERTOS)) {
+                reservado.put((Long) fila[0], aUnidades(((Number) fila[1]).doubleValue()));
+            }
+            saldos.clear();
+            for (Producto producto : productoRepository.findByProductoBaseIsNull()) {
+                Saldo saldo = new Saldo();
+                saldo.stock = aUnidades(producto.getStock() != null ? producto.getStock() : 0.0);
+                saldo.ocupado = reservado.getOrDefault(producto.getId(), 0L);
+                saldos.put(producto.getId(), saldo);
+                productoRepository.actualizarStockOcupado(producto.getId(), (double) saldo.ocupado / ESCALA);
+            }
+            pendientes.clear();
+        });
+    }
+
+    /**
+     * Reserva en memoria. Si la transacción en curso se revierte, la reserva se deshace.
+     */
+    public boolean reservar(Long id, double cantidad) {
+        long unidades = aUnidades(cantidad);
+        Saldo saldo = obtenerSaldo(id);
+        ReentrantLock lock = franja(id);
+        lock.lock();
+        try {
+            if (saldo.stock - saldo.ocupado < unidades) {
+                return false;
+            }
+            saldo.ocupado += unidades;
+        } finally {
+            lock.unlock();
+        }
+        pendientes.add(id);
+        alRevertir(() -> ajustarOcupado(id, -unidades));
+        return true;
+    }
+
+    // La liberación se aplica solo si la transacción confirma
+    public void liberar(Long id, double cantidad) {
+        alConfirmar(() -> ajustarOcupado(id, -aUnidades(cantidad)));
+    }
+
+    // El stock real ya se descontó en la tabla; en memoria se aplica al confirmar
+    public void consumir(Long id, double cantidad) {
+        long unidades = aUnidades(cantidad);
+        alConfirmar(() -> {
+            Saldo saldo = obtenerSaldo(id);
+            ReentrantLock lock = franja(id);
+            lock.lock();
+            try {
+                saldo.ocupado = Math.max(0L, saldo.ocupado - unidades);
+                saldo.stock = Math.max(0L, saldo.stock - unidades);
+            } finally {
+                lock.unlock();
+            }
+            pendientes.add(id);
+        });
+    }
+
+    // Vuelve a leer el stock de la tabla (por ejemplo después de editar el producto)
+    public void recargar(Long id) {
+        alConfirmar(() -> {
+            Saldo saldo = obtenerSaldo(id);
+            Double stock = productoRepository.findById(id).map(Producto::getStock).orElse(null);
+            ReentrantLock lock = franja(id);
+            lock.lock();
+            try {
+                saldo.stock = aUnidades(stock != null ? stock : 0.0);
+            } finally {
+                lock.unlock();
+            }
+            // El formulario de productos sobreescribe stock_ocupado, se vuelve a escribir en el próximo lote
+            pendientes.add(id);
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${alopos.stock.ledger.flush-ms:1000}")
+    public void persistirPendientes() {
+        if (pendientes.isEmpty()) {
+            return;
+        }
+        Map<Long, Double> lote = new TreeMap<>();
+        for (Long id : pendientes) {
+            pendientes.remove(id);
+            Saldo saldo = obtenerSaldo(id);
+            ReentrantLock lock = franja(id);
+            lock.lock();
+            try {
+                lote.put(id, (double) saldo.ocupado / ESCALA);
+            } finally {
+                lock.unlock();
+            }
+        }
+        try {
+            new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                    lote.forEach(productoRepository::actualizarStockOcupado));
+        } catch (RuntimeException e) {
+            // Se reintenta en el siguiente ciclo
+            pendientes.addAll(lote.keySet());
+            throw e;
+        }
+    }
+
+    @PreDestroy
+    public void cerrar() {
+        persistirPendientes();
+    }
+
+    private void ajustarOcupado(Long id, long unidades) {
+        Saldo saldo = obtenerSaldo(id);
+        ReentrantLock lock = franja(id);
+        lock.lock();
+        try {
+            saldo.ocupado = Math.max(0L, saldo.ocupado + unidades);
+        } finally {
+            lock.unlock();
+        }
+        pendientes.add(id);
+    }
+
+    /*
+     * Productos creados después del arranque se cargan la primera vez que se usan. Se llama antes de
+     * tomar la franja, así la lectura de la tabla no se hace con ningún bloqueo tomado; si otro hilo
+     * lo cargó mientras tanto, se usa el suyo.
+     */
+    private Saldo obtenerSaldo(Long id) {
+        Saldo saldo = saldos.get(id);
+        if (saldo != null) {
+            return saldo;
+        }
+        Producto producto = productoRepository.findById(id)
+                .orElseThrow(() -> new IllegalArgumentException("Producto no encontrado"));
+        Saldo nuevo = new Saldo();
+        nuevo.stock = aUnidades(producto.getStock() != null ? producto.getStock() : 0.0);
+        nuevo.ocupado = aUnidades(producto.getStockOcupado() != null ? producto.getStockOcupado() : 0.0);
+        Saldo existente = saldos.putIfAbsent(id, nuevo);
+        return existente != null ? existente : nuevo;
+    }
+
+    private void alRevertir(Runnable accion) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_ROLLED_BACK) {
+                    accion.run();
+                }
+            }
+        });
+    }
+
+    private void alConfirmar(Runnable accion) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            accion.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                accion.run();
+            }
+        });
+    }
+}
@@ -1,6 +1,9 @@
 package com.alocode.service;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -13,58 +16,61 @@ import com.alocode.model.Usuario;
 import com.alocode.model.enums.EstadoMesa;
 import com.alocode.model.enums.EstadoPedido;
 import com.alocode.model.enums.TipoPedido;
-import com.alocode.repository.CajaRepository;
 import com.alocode.repository.MesaRepository;
 import com.alocode.repository.PedidoRepository;
 import com.alocode.repository.ProductoRepository;
 
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class PedidoService {
+    // Duración de cada cancelación en bloque de pendientes de días anteriores
+    private static final String METRICA_CANCELACION = "alopos.pedidos.cancelacion.pendientes";
 
     private final PedidoRepository pedidoRepository;
     private final ProductoRepository productoRepository;
     private final MesaRepository mesaRepository;
-    private final CajaRepository cajaRepository;
     private final ProductoService productoService;
+    private final CajaService cajaService;
+    private final VentaDiariaService ventaDiariaService;
+    private final TableroPedidosService tableroPedidosService;
+    private final ColaCocinaService colaCocinaService;
+    private final MeterRegistry meterRegistry;
 
     @Transactional
     public Pedido crearPedido(Pedido pedido, List<DetallePedido> detalles, Usuario usuario) {
         // Validar caja abierta
-        Caja caja = cajaRepository.findCajaAbiertaHoy()
+        Caja caja = cajaService.obtenerCajaAbiertaHoy()
                 .orElseThrow(() -> new IllegalStateException("No hay caja abierta hoy"));
 
+        // Cargar todos los productos del pedido (con su producto base) en una sola consulta
+        Map<Long, Producto> productos = productoService.obtenerProductosPorIds(
+                detalles.stream().map(d -> d.getProducto().getId()).collect(Collectors.toSet()));
+
         // Validar y procesar detalles
         for (DetallePedido detalle : detalles) {
-            Producto producto = productoRepository.findById(detalle.getProducto().getId())
-                    .orElseThrow(() -> new IllegalArgumentException("Producto no encontrado"));
-
-            // Validar stock usando el servicio de productos
-            if (!productoService.verificarStockDisponible(producto, detalle.getCantidad())) {
-                String productoNombre = producto.getProductoBase() != null ? 
-                    producto.getProductoBase().getNombre() : producto.getNombre();
-                throw new IllegalStateException("Stock insuficiente para el producto: " + productoNombre);
+            Producto producto = productos.get(detalle.getProducto().getId());
+            if (producto == null) {
+                throw new IllegalArgumentException("Producto no encontrado");
             }
 
-            // Reservar stock usando el servicio de productos
-            productoService.reservarStock(producto, detalle.getCantidad());
-
-            // Configurar el detalle del pedido
-            detalle.setPrecioUnitario(producto.getPrecio());
-            detalle.setSubtotal(producto.getPrecio() * detalle.getCantidad());
-            detalle.setPedido(pedido);
-            
-            // Para productos derivados, registrar el producto base y la cantidad consumida
-            if (producto.getProductoBase() != null) {
-                detalle.setProductoBase(producto.getProductoBase());
-                detalle.setCantidadBaseConsumida(detalle.getCantidad() * producto.getFactorConversion());
-            }
+            configurarDetalle(detalle, pedido, producto, detalle.getCantidad());
         }
 
+        // Reservar stock agrupado por producto base (un UPDATE condicional por producto)
+        productoService.reservarStock(detalles);
+
         // Calcular total
         double subtotal = detalles.stream().mapToDouble(DetallePedido::getSubtotal).sum();
         pedido.setTotal(subtotal + pedido.getRecargo());
@@ -84,12 +90,16 @@ public class PedidoService {
         }
 
         pedido.setDetalles(detalles);
-        return pedidoRepository.save(pedido);
+        Pedido guardado = pedidoRepository.save(pedido);
+        tableroPedidosService.publicar(TableroPedidosService.TipoEvento.CREADO, guardado.getId());
+        colaCocinaService.actualizar(guardado.getId());
+        return guardado;
     }
 
     @Transactional
     public Pedido actualizarEstadoPedido(Long idPedido, EstadoPedido nuevoEstado, Usuario usuario) {
-        Pedido pedido = pedidoRepository.findById(idPedido)
+        // Con la fila bloqueada, un cobro y una cancelación del mismo pedido no pueden aplicarse los dos
+        Pedido pedido = pedidoRepository.findParaActualizarById(idPedido)
                 .orElseThrow(() -> new IllegalArgumentException("Pedido no encontrado"));
 
         // Validar transición de estado
@@ -116,6 +126,8 @@ public class PedidoService {
 
             pedido.setFechaPagado(new Date());
             pedido.setUsuarioPagado(usuario);
+            cajaService.registrarPago(pedido);
+            ventaDiariaService.registrarPago(pedido);
         } else if (nuevoEstado == EstadoPedido.CANCELADO) {
             // Solo liberar stock reservado
             for (DetallePedido detalle : pedido.getDetalles()) {
@@ -129,37 +141,63 @@ public class PedidoService {
                 mesa.setEstado(EstadoMesa.DISPONIBLE);
                 mesaRepository.save(mesa);
             }
+            cajaService.registrarCancelaciones(pedido.getCaja().getId(), 1);
+            ventaDiariaService.registrarCancelaciones(List.of(pedido));
         }
 
         pedido.setEstado(nuevoEstado);
+        tableroPedidosService.publicar(nuevoEstado == EstadoPedido.PAGADO
+                ? TableroPedidosService.TipoEvento.PAGADO : TableroPedidosService.TipoEvento.ESTADO, idPedido);
+        colaCocinaService.actualizar(idPedido);
         return pedidoRepository.save(pedido);
     }
 
+    /**
+     * Cancela en bloque los pedidos PENDIENTE de días anteriores: libera el stock reservado
+     * sumado por producto, libera sus mesas y cambia el estado, sin cargar los pedidos. Primero
+     * bloquea las filas de esos pedidos, así un cobro concurrente espera y luego los ve cancelados
+     * en lugar de consumir un stock que aquí ya se liberó.
+     */
     @Transactional
-    public void cancelarPedidosPendientesDeDiasAnteriores() {
-        List<Pedido> pedidos = pedidoRepository.findPedidosPendientesDeDiasAnteriores();
-        pedidos.forEach(p -> {
-            p.setEstado(EstadoPedido.CANCELADO);
-            // Liberar stock ocupado
-            p.getDetalles().forEach(d -> {
-                Producto producto = d.getProducto();
-                productoService.liberarStockReservado(producto, d.getCantidad());
-            });
-        });
-        pedidoRepository.saveAll(pedidos);
+    public int cancelarPedidosPendientesDeDiasAnteriores() {
+        Timer.Sample muestra = Timer.start(meterRegistry);
+        Date inicioHoy = Date.from(LocalDate.now().atStartOfDay(ZoneId.systemDefault()).toInstant());
+
+        List<Long> bloqueados = pedidoRepository.bloquearPendientesAnterioresA(inicioHoy);
+        if (bloqueados.isEmpty()) {
+            muestra.stop(meterRegistry.timer(METRICA_CANCELACION));
+            return 0;
+        }
+
+        Map<Long, Double> stockReservado = new HashMap<>();
+        for (Object[] fila : productoRepository.sumarStockReservadoDePendientesAnterioresA(inicioHoy)) {
+            stockReservado.put((Long) fila[0], ((Number) fila[1]).doubleValue());
+        }
+        productoService.liberarStockReservado(stockReservado);
+        int mesas = mesaRepository.liberarMesasDePendientesAnterioresA(inicioHoy);
+        cajaService.registrarCancelacionesDePendientesAnterioresA(inicioHoy);
+        ventaDiariaService.registrarCancelacionesDePendientesAnterioresA(inicioHoy);
+        int cancelados = pedidoRepository.cancelarPendientesAnterioresA(inicioHoy);
+        tableroPedidosService.publicarRecarga();
+        colaCocinaService.reconstruirAlConfirmar();
+
+        long nanos = muestra.stop(meterRegistry.timer(METRICA_CANCELACION));
+        log.info("Cancelación de pendientes anteriores: {} pedidos, {} productos, {} mesas en {} ms",
+                cancelados, stockReservado.size(), mesas, nanos / 1_000_000);
+        return cancelados;
     }
 
+    // Ya vienen ordenados por id desde la consulta
     public List<Pedido> obtenerPedidosPendientes() {
-        List<Pedido> pedidos = pedidoRepository.findByEstadoIn(List.of(
+        return pedidoRepository.findTableroByEstadoIn(List.of(
             EstadoPedido.PENDIENTE,
             EstadoPedido.PREPARANDO,
             EstadoPedido.ENTREGANDO));
-        pedidos.sort(java.util.Comparator.comparingLong(Pedido::getId));
-        return pedidos;
     }
 
+    // Con los detalles y sus productos cargados, para las vistas que los recorren
     public Optional<Pedido> obtenerPedidoPorId(Long id) {
-        return pedidoRepository.findById(id);
+        return pedidoRepository.findConDetallesById(id);
     }
 
     @Transactional
@@ -169,49 +207,70 @@ public class PedidoService {
             throw new IllegalStateException("No se puede editar un pedido PAGADO");
         }
         
-        // Liberar stock ocupado de los productos actuales
-        for (DetallePedido detalle : pedido.getDetalles()) {
-            Producto producto = detalle.getProducto();
-            productoService.liberarStockReservado(producto, detalle.getCantidad());
+        // Stock reservado hoy por el pedido, antes de tocar sus líneas
+        Map<Long, Double> reservadoAnterior = productoService.agruparPorProductoConStock(pedido.getDetalles());
+        
+        // Cantidades pedidas ahora, sumando las filas repetidas del mismo producto
+        Map<Long, Integer> cantidadesNuevas = new LinkedHashMap<>();
+        for (int i = 0; i < productos.size(); i++) {
+            cantidadesNuevas.merge(productos.get(i), cantidades.get(i), Integer::sum);
         }
+        Map<Long, Producto> productosPorId = productoService.obtenerProductosPorIds(cantidadesNuevas.keySet());
         
-        pedido.getDetalles().clear();
+        // Solo se modifican las líneas cuya cantidad cambió; las que desaparecen se eliminan (orphanRemoval)
+        Map<Long, DetallePedido> detallesActuales = new HashMap<>();
+        Iterator<DetallePedido> it = pedido.getDetalles().iterator();
+        while (it.hasNext()) {
+            DetallePedido detalle = it.next();
+            Long idProducto = detalle.getProducto().getId();
+            if (!cantidadesNuevas.containsKey(idProducto) || detallesActuales.putIfAbsent(idProducto, detalle) != null) {
+                it.remove();
+            }
+        }
         
-        // Agregar los nuevos detalles
-        for (int i = 0; i < productos.size(); i++) {
-            Producto producto = productoRepository.findById(productos.get(i))
-                    .orElseThrow(() -> new IllegalArgumentException("Producto no encontrado"));
-            
-            // Validar stock usando el servicio de productos
-            if (!productoService.verificarStockDisponible(producto, cantidades.get(i))) {
-                String productoNombre = producto.getProductoBase() != null ? 
-                    producto.getProductoBase().getNombre() : producto.getNombre();
-                throw new IllegalStateException("Stock insuficiente para el producto: " + productoNombre);
+        cantidadesNuevas.forEach((idProducto, cantidad) -> {
+            DetallePedido detalle = detallesActuales.get(idProducto);
+            if (detalle != null && detalle.getCantidad().equals(cantidad)) {
+                return;
             }
-            
-            // Reservar stock usando el servicio de productos
-            productoService.reservarStock(producto, cantidades.get(i));
-            
-            DetallePedido detalle = new DetallePedido();
-            detalle.setProducto(producto);
-            detalle.setCantidad(cantidades.get(i));
-            detalle.setPrecioUnitario(producto.getPrecio());
-            detalle.setSubtotal(producto.getPrecio() * cantidades.get(i));
-            detalle.setPedido(pedido);
-            
-            // Para productos derivados, registrar el producto base y la cantidad consumida
-            if (producto.getProductoBase() != null) {
-                detalle.setProductoBase(producto.getProductoBase());
-                detalle.setCantidadBaseConsumida(cantidades.get(i) * producto.getFactorConversion());
+            Producto producto = productosPorId.get(idProducto);
+            if (producto == null) {
+                throw new IllegalArgumentException("Producto no encontrado");
             }
-            
-            pedido.getDetalles().add(detalle);
-        }
+            if (detalle == null) {
+                detalle = new DetallePedido();
+                pedido.getDetalles().add(detalle);
+            }
+            configurarDetalle(detalle, pedido, producto, cantidad);
+        });
+        
+        // Reservar o liberar solo la diferencia neta por producto base
+        productoService.ajustarStockReservado(reservadoAnterior, pedido.getDetalles());
         
         // Recalcular total
         double subtotal = pedido.getDetalles().stream().mapToDouble(DetallePedido::getSubtotal).sum();
         pedido.setTotal(subtotal + pedido.getRecargo());
         pedidoRepository.save(pedido);
+        tableroPedidosService.publicar(TableroPedidosService.TipoEvento.ACTUALIZADO, pedido.getId());
+        colaCocinaService.actualizar(pedido.getId());
+    }
+
+    // Precio, subtotal y consumo del producto base de una línea del pedido
+    private void configurarDetalle(DetallePedido detalle, Pedido pedido, Producto producto, Integer cantidad) {
+        detalle.setProducto(producto);
+        detalle.setCantidad(cantidad);
+        detalle.setPrecioUnitario(producto.getPrecio());
+        detalle.setSubtotal(producto.getPrecio() * cantidad);
+        detalle.setPedido(pedido);
+        
+        // Para productos derivados, registrar el producto base y la cantidad consumida
+        if (producto.getProductoBase() != null) {
+            detalle.setProductoBase(producto.getProductoBase());
+            detalle.setCantidadBaseConsumida(cantidad * producto.getFactorConversion());
+        } else {
+            detalle.setProductoBase(null);
+            detalle.setCantidadBaseConsumida(0.0);
+        }
     }
 
     public List<Pedido> obtenerPedidosPorCajaYEstado(Long cajaId, EstadoPedido estado) {
@@ -4,16 +4,26 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.alocode.model.DetallePedido;
 import com.alocode.model.Producto;
 import com.alocode.repository.ProductoRepository;
 
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
 
 @Service
 @RequiredArgsConstructor
 public class ProductoService {
+    // Diferencias menores se consideran ruido de redondeo de los factores de conversión
+    private static final double TOLERANCIA_STOCK = 1e-9;
+
     private final ProductoRepository productoRepository;
+    // Presente solo con alopos.stock.ledger.enabled=true
+    private final Optional<LibroStock> libroStock;
     
     public List<Producto> obtenerTodosLosProductos() {
         return productoRepository.findAllByOrderByIdAsc();
@@ -26,6 +36,22 @@ public class ProductoService {
     public Optional<Producto> obtenerProductoPorId(Long id) {
         return productoRepository.findById(id);
     }
+
+    public Map<Long, Producto> obtenerProductosPorIds(Collection<Long> ids) {
+        Map<Long, Producto> productos = new HashMap<>();
+        productoRepository.findAllByIdConProductoBase(ids).forEach(p -> productos.put(p.getId(), p));
+        return productos;
+    }
+
+    // Producto que realmente guarda el stock: el base para los derivados, el mismo producto en otro caso
+    public Producto obtenerProductoConStock(Producto producto) {
+        return producto.getProductoBase() != null ? producto.getProductoBase() : producto;
+    }
+
+    // Cantidad expresada en unidades del producto que guarda el stock
+    public double calcularCantidadStock(Producto producto, Integer cantidad) {
+        return producto.getProductoBase() != null ? cantidad * producto.getFactorConversion() : cantidad;
+    }
     
     public Producto guardarProducto(Producto producto) {
         // Si es producto derivado, validar que tenga producto base y factor de conversión
@@ -37,7 +63,9 @@ public class ProductoService {
             producto.setStock(0.0);
             producto.setStockOcupado(0.0);
         }
-        return productoRepository.save(producto);
+        Producto guardado = productoRepository.save(producto);
+        libroStock.ifPresent(libro -> libro.recargar(guardado.getId()));
+        return guardado;
     }
     
     public void eliminarProducto(Long id) {
@@ -74,70 +102,94 @@ public class ProductoService {
         return productoRepository.findByProductoBaseIsNotNullAndActivoTrue();
     }
     
-    public boolean verificarStockDisponible(Producto producto, Integer cantidad) {
-        if (producto.getProductoBase() != null) {
-            // Producto derivado - verificar stock del producto base
-            Producto productoBase = producto.getProductoBase();
-            double cantidadBaseNecesaria = cantidad * producto.getFactorConversion();
-            return (productoBase.getStock() - productoBase.getStockOcupado()) >= cantidadBaseNecesaria;
-        } else {
-            // Producto normal - verificar su propio stock
-            return (producto.getStock() - producto.getStockOcupado()) >= cantidad;
+    /*
+     * Las operaciones de stock se aplican con UPDATE atómicos sobre la fila del producto que
+     * guarda el stock, en lugar de leer la entidad, calcular en Java y volver a guardarla.
+     * Así dos cajeros vendiendo el último cuarto de pollo no pueden pasar ambos la validación.
+     */
+
+    /**
+     * Reserva el stock de todas las líneas de un pedido. Las líneas que consumen el mismo
+     * producto base se agrupan y se aplica un único UPDATE condicional por producto,
+     * en orden de id para que dos pedidos concurrentes bloqueen las filas en el mismo orden.
+     */
+    @Transactional
+    public void reservarStock(List<DetallePedido> detalles) {
+        ajustarStockReservado(Map.of(), detalles);
+    }
+
+    // Cantidad de stock que consumen las líneas, agrupada por producto que guarda el stock
+    public Map<Long, Double> agruparPorProductoConStock(List<DetallePedido> detalles) {
+        Map<Long, Double> cantidades = new TreeMap<>();
+        for (DetallePedido detalle : detalles) {
+            cantidades.merge(obtenerProductoConStock(detalle.getProducto()).getId(),
+                    calcularCantidadStock(detalle.getProducto(), detalle.getCantidad()), Double::sum);
         }
+        return cantidades;
     }
-    
+
+    /**
+     * Lleva la reserva de un pedido desde lo reservado antes hasta lo que piden sus líneas
+     * actuales, aplicando solo la diferencia neta por producto base.
+     */
     @Transactional
-    public void reservarStock(Producto producto, Integer cantidad) {
-        if (producto.getProductoBase() != null) {
-            // Producto derivado - reservar stock del producto base
-            Producto productoBase = producto.getProductoBase();
-            double cantidadBaseReservar = cantidad * producto.getFactorConversion();
-            if ((productoBase.getStock() - productoBase.getStockOcupado()) < cantidadBaseReservar) {
-                throw new IllegalStateException("Stock insuficiente del producto base: " + productoBase.getNombre());
-            }
-            productoBase.setStockOcupado(productoBase.getStockOcupado() + cantidadBaseReservar);
-            productoRepository.save(productoBase);
-        } else {
-            // Producto normal - reservar su propio stock
-            if ((producto.getStock() - producto.getStockOcupado()) < cantidad) {
-                throw new IllegalStateException("Stock insuficiente para el producto: " + producto.getNombre());
+    public void ajustarStockReservado(Map<Long, Double> reservadoAnterior, List<DetallePedido> detalles) {
+        Map<Long, Double> diferencias = new TreeMap<>(agruparPorProductoConStock(detalles));
+        reservadoAnterior.forEach((id, cantidad) -> diferencias.merge(id, -cantidad, Double::sum));
+
+        Map<Long, Producto> productosConStock = new HashMap<>();
+        detalles.forEach(d -> productosConStock.putIfAbsent(
+                obtenerProductoConStock(d.getProducto()).getId(), obtenerProductoConStock(d.getProducto())));
+
+        diferencias.forEach((id, diferencia) -> {
+            if (diferencia > TOLERANCIA_STOCK) {
+                if (!reservarEnProductoConStock(id, diferencia)) {
+                    throw new IllegalStateException("Stock insuficiente para el producto: "
+                            + productosConStock.get(id).getNombre());
+                }
+            } else if (diferencia < -TOLERANCIA_STOCK) {
+                liberarEnProductoConStock(id, -diferencia);
             }
-            producto.setStockOcupado(producto.getStockOcupado() + cantidad);
-            productoRepository.save(producto);
-        }
+        });
     }
     
+    // Libera cantidades ya agrupadas por producto que guarda el stock (id -> cantidad)
+    @Transactional
+    public void liberarStockReservado(Map<Long, Double> cantidadesPorProducto) {
+        new TreeMap<>(cantidadesPorProducto).forEach(this::liberarEnProductoConStock);
+    }
+
     @Transactional
     public void liberarStockReservado(Producto producto, Integer cantidad) {
-        if (producto.getProductoBase() != null) {
-            // Producto derivado - liberar stock del producto base
-            Producto productoBase = producto.getProductoBase();
-            double cantidadBaseLiberar = cantidad * producto.getFactorConversion();
-            productoBase.setStockOcupado(Math.max(0.0, productoBase.getStockOcupado() - cantidadBaseLiberar));
-            productoRepository.save(productoBase);
-        } else {
-            // Producto normal - liberar su propio stock
-            producto.setStockOcupado(Math.max(0.0, producto.getStockOcupado() - cantidad));
-            productoRepository.save(producto);
-        }
+        liberarEnProductoConStock(obtenerProductoConStock(producto).getId(), calcularCantidadStock(producto, cantidad));
     }
     
     @Transactional
     public void consumirStock(Producto producto, Integer cantidad) {
-        if (producto.getProductoBase() != null) {
-            // Producto derivado - consumir stock del producto base
-            Producto productoBase = producto.getProductoBase();
-            double cantidadBaseConsumir = cantidad * producto.getFactorConversion();
-            // Liberar primero el stock reservado
-            productoBase.setStockOcupado(Math.max(0.0, productoBase.getStockOcupado() - cantidadBaseConsumir));
-            // Reducir el stock real
-            productoBase.setStock(Math.max(0.0, productoBase.getStock() - cantidadBaseConsumir));
-            productoRepository.save(productoBase);
+        Long id = obtenerProductoConStock(producto).getId();
+        double cantidadStock = calcularCantidadStock(producto, cantidad);
+        if (libroStock.isPresent()) {
+            // El stock real se escribe en el momento, stock_ocupado lo persiste el libro en lote
+            productoRepository.descontarStock(id, cantidadStock);
+            libroStock.get().consumir(id, cantidadStock);
         } else {
-            // Producto normal - consumir su propio stock
-            producto.setStockOcupado(Math.max(0.0, producto.getStockOcupado() - cantidad));
-            producto.setStock(Math.max(0.0, producto.getStock() - cantidad));
-            productoRepository.save(producto);
+            productoRepository.consumirStock(id, cantidadStock);
+        }
+    }
+
+    // Con el libro en memoria la reserva no toca la fila; sin él, UPDATE condicional en la tabla
+    private boolean reservarEnProductoConStock(Long id, double cantidad) {
+        if (libroStock.isPresent()) {
+            return libroStock.get().reservar(id, cantidad);
+        }
+        return productoRepository.reservarStockSiDisponible(id, cantidad) > 0;
+    }
+
+    private void liberarEnProductoConStock(Long id, double cantidad) {
+        if (libroStock.isPresent()) {
+            libroStock.get().liberar(id, cantidad);
+        } else {
+            productoRepository.liberarStockReservado(id, cantidad);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,131 @@
+package com.alocode.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.alocode.model.enums.EstadoCaja;
+import com.alocode.repository.CajaRepository;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Caché de reportes por tipo y rango de días. Solo se guardan rangos que terminaron antes de hoy
+ * y cuyas cajas están todas cerradas; el día en curso siempre se calcula. Un cambio tardío en un
+ * día ya cerrado (ver VentaDiariaService) invalida los reportes que lo cubren.
+ */
+@Component
+@RequiredArgsConstructor
+public class ReporteCache {
+    private final CajaRepository cajaRepository;
+
+    @Value("${alopos.reportes.cache.maximo:200}")
+    private int maximo;
+
+    // La generación evita guardar un reporte que empezó a calcularse antes de una invalidación
+    private final AtomicLong generacion = new AtomicLong();
+
+    // LinkedHashMap en orden de acceso: se descarta el reporte usado hace más tiempo
+    private final Map<Clave, Object> reportes = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Clave, Object> eldest) {
+            return size() > maximo;
+        }
+    };
+
+    private static final class Clave {
+        private final String tipo;
+        private final LocalDate inicio;
+        private final LocalDate fin;
+
+        private Clave(String tipo, LocalDate inicio, LocalDate fin) {
+            this.tipo = tipo;
+            this.inicio = inicio;
+            this.fin = fin;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Clave otra)) {
+                return false;
+            }
+            return tipo.equals(otra.tipo) && inicio.equals(otra.inicio) && fin.equals(otra.fin);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(tipo, inicio, fin);
+        }
+    }
+
+    /**
+     * Devuelve el reporte guardado o lo calcula. El reporte calculado se guarda solo si el rango
+     * (ambos días incluidos) es anterior a hoy y no tiene cajas abiertas.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T obtener(String tipo, LocalDate inicio, LocalDate fin, Supplier<T> calcular) {
+        Clave clave = new Clave(tipo, inicio, fin);
+        synchronized (reportes) {
+            Object reporte = reportes.get(clave);
+            if (reporte != null) {
+                return (T) reporte;
+            }
+        }
+        long generacionInicial = generacion.get();
+        T reporte = calcular.get();
+        if (esCerrado(inicio, fin)) {
+            synchronized (reportes) {
+                if (generacion.get() == generacionInicial) {
+                    reportes.put(clave, reporte);
+                }
+            }
+        }
+        return reporte;
+    }
+
+    // Invalida ahora y otra vez al terminar la transacción, para que nadie guarde el estado previo al commit
+    public void invalidar(LocalDate dia) {
+        invalidar(dia, dia);
+    }
+
+    public void invalidar(LocalDate inicio, LocalDate fin) {
+        // Solo se guardan rangos anteriores a hoy, así que los cambios del día en curso no invalidan nada
+        if (!inicio.isBefore(LocalDate.now())) {
+            return;
+        }
+        quitar(inicio, fin);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    quitar(inicio, fin);
+                }
+            });
+        }
+    }
+
+    private void quitar(LocalDate inicio, LocalDate fin) {
+        generacion.incrementAndGet();
+        synchronized (reportes) {
+            reportes.keySet().removeIf(clave -> !clave.fin.isBefore(inicio) && !clave.inicio.isAfter(fin));
+        }
+    }
+
+    private boolean esCerrado(LocalDate inicio, LocalDate fin) {
+        if (!fin.isBefore(LocalDate.now())) {
+            return false;
+        }
+        return !cajaRepository.existsByEstadoAndFechaBetween(EstadoCaja.ABIERTA,
+                Date.from(inicio.atStartOfDay(ZoneId.systemDefault()).toInstant()),
+                Date.from(fin.atStartOfDay(ZoneId.systemDefault()).toInstant()));
+    }
+}
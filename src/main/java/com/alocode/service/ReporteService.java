@@ -4,37 +4,64 @@ import lombok.RequiredArgsConstructor;
 
 import java.util.Optional;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.alocode.model.Caja;
-import com.alocode.model.Pedido;
+import com.alocode.model.DetalleResumen;
+import com.alocode.model.PedidoResumen;
+import com.alocode.model.RendimientoUsuario;
+import com.alocode.model.VentaDiaria;
+import com.alocode.model.VentaProducto;
 import com.alocode.model.enums.EstadoPedido;
 import com.alocode.repository.CajaRepository;
 import com.alocode.repository.PedidoRepository;
+import com.alocode.repository.ProductoRepository;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Date;
 import java.time.ZoneId;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
 public class ReporteService {
     private final PedidoRepository pedidoRepository;
     private final CajaRepository cajaRepository;
+    private final ProductoRepository productoRepository;
+    private final VentaDiariaService ventaDiariaService;
+    private final ReporteCache reporteCache;
+    private final PlatformTransactionManager transactionManager;
 
     public ReporteDiario generarReporteDiario(LocalDateTime fecha) {
+        return reporteCache.obtener("diario", fecha.toLocalDate(), fecha.toLocalDate(),
+                () -> armarReporteDiario(fecha));
+    }
+
+    private ReporteDiario armarReporteDiario(LocalDateTime fecha) {
         LocalDateTime fin = fecha.plusDays(1);
-        List<Pedido> pedidos = pedidoRepository.findByEstadoAndFechaPagadoBetweenOrderByIdAsc(
-                EstadoPedido.PAGADO,
-                fecha,
-                fin);
+        // Filas de solo lectura: el reporte se puede guardar en caché y exportar después sin sesión abierta
+        List<PedidoResumen> pedidos = pedidoRepository.findResumenPagadosEntre(fecha, fin);
+        Map<Long, List<DetalleResumen>> detalles = new HashMap<>();
+        for (DetalleResumen detalle : pedidoRepository.findDetallesResumenPagadosEntre(fecha, fin)) {
+            detalles.computeIfAbsent(detalle.pedidoId(), id -> new ArrayList<>()).add(detalle);
+        }
 
         double totalVentas = pedidos.stream()
-                .mapToDouble(p -> p.getTotal() - p.getRecargo())
+                .mapToDouble(p -> p.total() - p.recargo())
                 .sum();
 
         double totalRecargos = pedidos.stream()
-                .mapToDouble(Pedido::getRecargo)
+                .mapToDouble(PedidoResumen::recargo)
                 .sum();
 
         double totalNeto = totalVentas + totalRecargos;
@@ -49,82 +76,283 @@ public class ReporteService {
                 totalVentas,
                 totalRecargos,
                 totalNeto,
-                pedidos);
+                pedidos,
+                detalles);
     }
 
+    // Reporte semanal completo, con la lista de pedidos pagados (para exportar)
     public ReporteSemanal generarReporteSemanal(LocalDateTime inicio, LocalDateTime fin) {
+        return reporteCache.obtener("semanal", inicio.toLocalDate(), fin.toLocalDate(),
+                () -> armarReporteSemanal(inicio, fin, obtenerPedidosPagados(inicio, fin)));
+    }
+
+    // Solo los totales, leídos de ventas_diarias sin cargar pedidos (para la pantalla)
+    public ReporteSemanal generarResumenSemanal(LocalDateTime inicio, LocalDateTime fin) {
+        return reporteCache.obtener("resumen-semanal", inicio.toLocalDate(), fin.toLocalDate(),
+                () -> armarReporteSemanal(inicio, fin, List.of()));
+    }
+
+    public ReporteMensual generarReporteMensual(LocalDateTime inicio, LocalDateTime fin) {
+        return reporteCache.obtener("mensual", inicio.toLocalDate(), fin.toLocalDate(),
+                () -> armarReporteMensual(inicio, fin, obtenerPedidosPagados(inicio, fin)));
+    }
+
+    public ReporteMensual generarResumenMensual(LocalDateTime inicio, LocalDateTime fin) {
+        return reporteCache.obtener("resumen-mensual", inicio.toLocalDate(), fin.toLocalDate(),
+                () -> armarReporteMensual(inicio, fin, List.of()));
+    }
+
+    // Ranking de productos vendidos y consumo de productos base, agrupados en la base de datos
+    public ReporteProductos generarReporteProductos(LocalDateTime inicio, LocalDateTime fin) {
+        return reporteCache.obtener("productos", inicio.toLocalDate(), fin.toLocalDate(),
+                () -> armarReporteProductos(inicio, fin));
+    }
+
+    private ReporteProductos armarReporteProductos(LocalDateTime inicio, LocalDateTime fin) {
+        LocalDateTime finExclusivo = fin.toLocalDate().plusDays(1).atStartOfDay();
+        List<VentaProducto> productos = productoRepository.sumarVentasPorProducto(inicio, finExclusivo);
+        List<VentaProducto> productosBase = productoRepository.sumarVentasPorProductoBase(inicio, finExclusivo);
+        return new ReporteProductos(
+                java.sql.Timestamp.valueOf(inicio),
+                java.sql.Timestamp.valueOf(fin),
+                productos,
+                productosBase);
+    }
+
+    // Pedidos tomados y cobrados por cada usuario, agrupados en la base de datos
+    public ReporteUsuarios generarReporteUsuarios(LocalDateTime inicio, LocalDateTime fin) {
+        return reporteCache.obtener("usuarios", inicio.toLocalDate(), fin.toLocalDate(),
+                () -> new ReporteUsuarios(
+                        java.sql.Timestamp.valueOf(inicio),
+                        java.sql.Timestamp.valueOf(fin),
+                        calcularRendimientoPorUsuario(inicio, fin.toLocalDate().plusDays(1).atStartOfDay())));
+    }
+
+    /*
+     * Lo tomado se agrupa por usuario sobre la fecha del pedido y lo cobrado por usuarioPagado sobre la
+     * fecha de pago: dos consultas que usan cada una su índice, unidas aquí por id de usuario.
+     */
+    private List<RendimientoUsuario> calcularRendimientoPorUsuario(LocalDateTime inicio, LocalDateTime fin) {
+        Map<Long, Object[]> tomados = new HashMap<>();
+        Map<Long, String> nombres = new HashMap<>();
+        for (Object[] fila : pedidoRepository.contarTomadosPorUsuario(inicio, fin)) {
+            tomados.put((Long) fila[0], fila);
+            nombres.put((Long) fila[0], (String) fila[1]);
+        }
+        Map<Long, Object[]> cobrados = new HashMap<>();
+        for (Object[] fila : pedidoRepository.sumarCobradosPorUsuario(inicio, fin)) {
+            cobrados.put((Long) fila[0], fila);
+            nombres.put((Long) fila[0], (String) fila[1]);
+        }
+
+        List<RendimientoUsuario> filas = new ArrayList<>();
+        nombres.forEach((id, nombre) -> {
+            Object[] tomado = tomados.get(id);
+            Object[] cobrado = cobrados.get(id);
+            filas.add(new RendimientoUsuario(id, nombre,
+                    tomado != null ? ((Number) tomado[2]).longValue() : 0L,
+                    cobrado != null ? ((Number) cobrado[2]).longValue() : 0L,
+                    cobrado != null && cobrado[3] != null ? ((Number) cobrado[3]).doubleValue() : 0.0,
+                    cobrado != null && cobrado[4] != null ? ((Number) cobrado[4]).doubleValue() : null));
+        });
+        filas.sort(Comparator.comparingDouble(RendimientoUsuario::totalCobrado).reversed()
+                .thenComparing(RendimientoUsuario::nombre, Comparator.nullsLast(Comparator.naturalOrder())));
+        return filas;
+    }
+
+    // Pedidos y ventas por día de la semana y hora de pago, agrupados en la base de datos
+    public ReporteHorarios generarReporteHorarios(LocalDateTime inicio, LocalDateTime fin) {
+        return reporteCache.obtener("horarios", inicio.toLocalDate(), fin.toLocalDate(),
+                () -> armarReporteHorarios(inicio, fin));
+    }
+
+    private ReporteHorarios armarReporteHorarios(LocalDateTime inicio, LocalDateTime fin) {
+        long[][] cantidades = new long[7][24];
+        double[][] totales = new double[7][24];
+        for (Object[] fila : pedidoRepository.sumarPagadosPorDiaSemanaYHora(inicio,
+                fin.toLocalDate().plusDays(1).atStartOfDay())) {
+            // La consulta numera los días desde el domingo (1); el reporte empieza en lunes (0)
+            int dia = (((Number) fila[0]).intValue() + 5) % 7;
+            int hora = ((Number) fila[1]).intValue();
+            cantidades[dia][hora] += ((Number) fila[2]).longValue();
+            totales[dia][hora] += fila[3] != null ? ((Number) fila[3]).doubleValue() : 0.0;
+        }
+        return new ReporteHorarios(
+                java.sql.Timestamp.valueOf(inicio),
+                java.sql.Timestamp.valueOf(fin),
+                cantidades,
+                totales);
+    }
+
+    /**
+     * Recorre los pedidos pagados del rango (días completos) con un cursor del servidor, dentro de una
+     * transacción de solo lectura, y entrega las filas al consumidor de a una. Las filas son PedidoResumen,
+     * no entidades, así que nada queda en el contexto de persistencia y la memoria no depende de la
+     * cantidad de pedidos.
+     */
+    public <T> T recorrerPedidosPagados(LocalDateTime inicio, LocalDateTime fin, Function<Iterator<PedidoResumen>, T> consumidor) {
+        TransactionTemplate transaccion = new TransactionTemplate(transactionManager);
+        transaccion.setReadOnly(true);
+        return transaccion.execute(status -> {
+            try (Stream<PedidoResumen> pedidos = pedidoRepository.streamResumenPagadosEntre(inicio,
+                    fin.toLocalDate().plusDays(1).atStartOfDay())) {
+                return consumidor.apply(pedidos.iterator());
+            }
+        });
+    }
+
+    // Pedidos pagados desde el inicio del primer día hasta el final del último día del rango
+    public List<PedidoResumen> obtenerPedidosPagados(LocalDateTime inicio, LocalDateTime fin) {
+        return pedidoRepository.findResumenPagadosEntre(inicio, fin.toLocalDate().plusDays(1).atStartOfDay());
+    }
+
+    private ReporteSemanal armarReporteSemanal(LocalDateTime inicio, LocalDateTime fin, List<PedidoResumen> pedidos) {
         // Convertir LocalDateTime a java.util.Date para el repositorio
         List<Caja> cajas = cajaRepository.findByFechaBetween(
                 new java.util.Date(java.sql.Timestamp.valueOf(inicio).getTime()),
                 new java.util.Date(java.sql.Timestamp.valueOf(fin).getTime()));
 
-        List<Pedido> pedidos = pedidoRepository.findByEstadoAndFechaPagadoBetweenOrderByIdAsc(
-                EstadoPedido.PAGADO,
-                inicio,
-                fin);
+        double totalSemanal = 0;
+        int cantidadPedidos = 0;
+        Map<String, Integer> pedidosPorDia = new HashMap<>();
+        for (VentaDiaria dia : ventaDiariaService.obtenerEntre(inicio.toLocalDate(), fin.toLocalDate())) {
+            totalSemanal += dia.getTotalCobrado();
+            cantidadPedidos += dia.getCantidadPedidos();
+            pedidosPorDia.put(dia.getFecha().toString(), dia.getCantidadPedidos());
+        }
 
-    double totalSemanal = pedidos.stream()
-    .mapToDouble(Pedido::getTotal)
-    .sum();
+        // Pedidos pagados y total de cada caja, en una consulta agrupada
+        Map<Long, PedidoRepository.TotalesCaja> totalesPorCaja = new HashMap<>();
+        if (!cajas.isEmpty()) {
+            pedidoRepository.calcularTotalesPorCajasYEstado(cajas.stream().map(Caja::getId).toList(), EstadoPedido.PAGADO)
+                    .forEach(totales -> totalesPorCaja.put(totales.getCajaId(), totales));
+        }
 
         return new ReporteSemanal(
                 java.sql.Timestamp.valueOf(inicio),
                 java.sql.Timestamp.valueOf(fin),
                 totalSemanal,
+                cantidadPedidos,
+                pedidosPorDia,
                 cajas,
+                totalesPorCaja,
                 pedidos);
     }
 
-    public ReporteMensual generarReporteMensual(LocalDateTime inicio, LocalDateTime fin) {
-        List<Pedido> pedidos = pedidoRepository.findByEstadoAndFechaPagadoBetweenOrderByIdAsc(
-                EstadoPedido.PAGADO,
-                inicio,
-                fin);
-
-    double totalMensual = pedidos.stream()
-    .mapToDouble(Pedido::getTotal)
-    .sum();
-
-        // Agrupar pedidos solo por los días del mes, sin extender semanas fuera del mes
-        List<ReporteService.SemanaResumen> semanas = new java.util.ArrayList<>();
-        LocalDateTime semanaInicio = inicio;
-        while (semanaInicio.isBefore(fin)) {
-            final LocalDateTime semanaInicioFinal = semanaInicio;
-            LocalDateTime semanaFin = semanaInicio.plusDays(6);
-            if (semanaFin.isAfter(fin))
-                semanaFin = fin;
-            final LocalDateTime semanaFinFinal = semanaFin;
-            // Filtrar pedidos de la semana SOLO dentro del mes
-            List<Pedido> pedidosSemana = pedidos.stream()
-                    .filter(p -> {
-                        Date fechaPedidoDate = p.getFechaPagado();
-                        if (fechaPedidoDate == null)
-                            return false;
-                        LocalDateTime fechaPedido = fechaPedidoDate.toInstant().atZone(ZoneId.systemDefault())
-                                .toLocalDateTime();
-                        return (fechaPedido.isEqual(semanaInicioFinal) || fechaPedido.isAfter(semanaInicioFinal))
-                                && fechaPedido.isBefore(semanaFinFinal.plusDays(1));
-                    })
-                    .collect(java.util.stream.Collectors.toList());
-            double totalSemana = pedidosSemana.stream().mapToDouble(Pedido::getTotal).sum();
-            int cantidadPedidos = pedidosSemana.size();
-            if (totalSemana > 0 || cantidadPedidos > 0) {
-                semanas.add(new ReporteService.SemanaResumen(
-                        java.sql.Timestamp.valueOf(semanaInicioFinal),
-                        java.sql.Timestamp.valueOf(semanaFinFinal),
-                        totalSemana,
-                        cantidadPedidos,
-                        pedidosSemana));
+    private ReporteMensual armarReporteMensual(LocalDateTime inicio, LocalDateTime fin, List<PedidoResumen> pedidos) {
+        // Semanas de 7 días desde el inicio, sin extender la última fuera del mes
+        List<LocalDate> iniciosSemana = new ArrayList<>();
+        LocalDate ultimoDia = fin.toLocalDate();
+        for (LocalDate dia = inicio.toLocalDate(); !dia.isAfter(ultimoDia); dia = dia.plusDays(7)) {
+            iniciosSemana.add(dia);
+        }
+        Tramos semanas = new Tramos(iniciosSemana, ultimoDia.plusDays(1), !pedidos.isEmpty());
+
+        // Totales desde ventas_diarias; los pedidos, si se cargaron, solo se reparten en su semana
+        double totalMensual = 0;
+        int cantidadPedidosMes = 0;
+        for (VentaDiaria dia : ventaDiariaService.obtenerEntre(inicio.toLocalDate(), ultimoDia)) {
+            semanas.sumar(Tramos.aEpochMilli(dia.getFecha()), dia.getTotalCobrado(), dia.getCantidadPedidos());
+            totalMensual += dia.getTotalCobrado();
+            cantidadPedidosMes += dia.getCantidadPedidos();
+        }
+        for (PedidoResumen pedido : pedidos) {
+            semanas.agregarPedido(pedido);
+        }
+
+        List<ReporteService.SemanaResumen> resumenSemanas = new ArrayList<>();
+        for (int i = 0; i < iniciosSemana.size(); i++) {
+            if (semanas.getTotal(i) > 0 || semanas.getCantidad(i) > 0) {
+                LocalDate semanaFin = i + 1 < iniciosSemana.size() ? iniciosSemana.get(i + 1).minusDays(1) : ultimoDia;
+                resumenSemanas.add(new ReporteService.SemanaResumen(
+                        java.sql.Timestamp.valueOf(iniciosSemana.get(i).atStartOfDay()),
+                        java.sql.Timestamp.valueOf(semanaFin.atStartOfDay()),
+                        semanas.getTotal(i),
+                        semanas.getCantidad(i),
+                        semanas.getPedidos(i)));
             }
-            semanaInicio = semanaFinFinal.plusDays(1);
         }
 
         return new ReporteMensual(
                 java.sql.Timestamp.valueOf(inicio),
                 java.sql.Timestamp.valueOf(fin),
                 totalMensual,
+                cantidadPedidosMes,
                 pedidos,
-                semanas);
+                resumenSemanas);
+    }
+
+    /**
+     * Reparte montos y pedidos en tramos de fechas consecutivos (semanas, días) en una sola pasada.
+     * Los límites se calculan una vez en milisegundos y cada pedido se ubica con una búsqueda binaria
+     * sobre su fechaPagado, sin convertir fechas por pedido.
+     */
+    static final class Tramos {
+        // Inicio de cada tramo y, al final, el fin (exclusivo) del último
+        private final long[] limites;
+        private final double[] totales;
+        private final int[] cantidades;
+        private final List<List<PedidoResumen>> pedidos;
+
+        Tramos(List<LocalDate> inicios, LocalDate finExclusivo, boolean guardarPedidos) {
+            int n = inicios.size();
+            limites = new long[n + 1];
+            for (int i = 0; i < n; i++) {
+                limites[i] = aEpochMilli(inicios.get(i));
+            }
+            limites[n] = aEpochMilli(finExclusivo);
+            totales = new double[n];
+            cantidades = new int[n];
+            pedidos = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                pedidos.add(guardarPedidos ? new ArrayList<>() : List.of());
+            }
+        }
+
+        static long aEpochMilli(LocalDate dia) {
+            return dia.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        }
+
+        // Índice del tramo que contiene el instante, o -1 si cae fuera del rango
+        int indice(long epochMilli) {
+            if (epochMilli < limites[0] || epochMilli >= limites[limites.length - 1]) {
+                return -1;
+            }
+            int i = Arrays.binarySearch(limites, epochMilli);
+            return i >= 0 ? i : -i - 2;
+        }
+
+        void sumar(long epochMilli, double total, int cantidad) {
+            int i = indice(epochMilli);
+            if (i >= 0) {
+                totales[i] += total;
+                cantidades[i] += cantidad;
+            }
+        }
+
+        // Solo ubica el pedido en su tramo; los montos se suman aparte con sumar
+        void agregarPedido(PedidoResumen pedido) {
+            Date fechaPagado = pedido.fechaPagado();
+            if (fechaPagado == null) {
+                return;
+            }
+            int i = indice(fechaPagado.getTime());
+            if (i >= 0) {
+                pedidos.get(i).add(pedido);
+            }
+        }
+
+        double getTotal(int i) {
+            return totales[i];
+        }
+
+        int getCantidad(int i) {
+            return cantidades[i];
+        }
+
+        List<PedidoResumen> getPedidos(int i) {
+            return pedidos.get(i);
+        }
     }
 
     // Clases internas para los reportes
@@ -135,10 +363,10 @@ public class ReporteService {
         private java.util.Date fin;
         private double totalSemana;
         private int cantidadPedidos;
-        private List<Pedido> pedidos;
+        private List<PedidoResumen> pedidos;
 
         public SemanaResumen(java.util.Date inicio, java.util.Date fin, double totalSemana, int cantidadPedidos,
-                List<Pedido> pedidos) {
+                List<PedidoResumen> pedidos) {
             this.inicio = inicio;
             this.fin = fin;
             this.totalSemana = totalSemana;
@@ -162,7 +390,7 @@ public class ReporteService {
             return cantidadPedidos;
         }
 
-        public List<Pedido> getPedidos() {
+        public List<PedidoResumen> getPedidos() {
             return pedidos;
         }
     }
@@ -174,10 +402,13 @@ public class ReporteService {
         private double totalVentas;
         private double totalRecargos;
         private double totalNeto;
-        private List<Pedido> pedidos;
+        private List<PedidoResumen> pedidos;
+        // Detalles de cada pedido por id, para la exportación
+        private Map<Long, List<DetalleResumen>> detalles;
 
         public ReporteDiario(java.util.Date fecha, double montoApertura, double montoCierre, double totalVentas,
-                double totalRecargos, double totalNeto, List<Pedido> pedidos) {
+                double totalRecargos, double totalNeto, List<PedidoResumen> pedidos,
+                Map<Long, List<DetalleResumen>> detalles) {
             this.fecha = fecha;
             this.montoApertura = montoApertura;
             this.montoCierre = montoCierre;
@@ -185,6 +416,7 @@ public class ReporteService {
             this.totalRecargos = totalRecargos;
             this.totalNeto = totalNeto;
             this.pedidos = pedidos;
+            this.detalles = detalles;
         }
 
         public java.util.Date getFecha() {
@@ -235,28 +467,41 @@ public class ReporteService {
             this.totalNeto = totalNeto;
         }
 
-        public List<Pedido> getPedidos() {
+        public List<PedidoResumen> getPedidos() {
             return pedidos;
         }
 
-        public void setPedidos(List<Pedido> pedidos) {
+        public void setPedidos(List<PedidoResumen> pedidos) {
             this.pedidos = pedidos;
         }
+
+        public List<DetalleResumen> getDetalles(Long pedidoId) {
+            return detalles.getOrDefault(pedidoId, List.of());
+        }
     }
 
     public static class ReporteSemanal {
         private java.util.Date inicio;
         private java.util.Date fin;
         private double totalSemanal;
+        private int cantidadPedidos;
+        // Pedidos pagados por día, con la fecha en formato yyyy-MM-dd
+        private Map<String, Integer> pedidosPorDia;
         private List<Caja> cajas;
-        private List<Pedido> pedidos;
+        // Pedidos pagados y totales por id de caja, calculados desde la tabla de pedidos
+        private Map<Long, PedidoRepository.TotalesCaja> totalesPorCaja;
+        private List<PedidoResumen> pedidos;
 
-        public ReporteSemanal(java.util.Date inicio, java.util.Date fin, double totalSemanal, List<Caja> cajas,
-                List<Pedido> pedidos) {
+        public ReporteSemanal(java.util.Date inicio, java.util.Date fin, double totalSemanal, int cantidadPedidos,
+                Map<String, Integer> pedidosPorDia, List<Caja> cajas,
+                Map<Long, PedidoRepository.TotalesCaja> totalesPorCaja, List<PedidoResumen> pedidos) {
             this.inicio = inicio;
             this.fin = fin;
             this.totalSemanal = totalSemanal;
+            this.cantidadPedidos = cantidadPedidos;
+            this.pedidosPorDia = pedidosPorDia;
             this.cajas = cajas;
+            this.totalesPorCaja = totalesPorCaja;
             this.pedidos = pedidos;
         }
 
@@ -284,6 +529,22 @@ public class ReporteService {
             this.totalSemanal = totalSemanal;
         }
 
+        public int getCantidadPedidos() {
+            return cantidadPedidos;
+        }
+
+        public void setCantidadPedidos(int cantidadPedidos) {
+            this.cantidadPedidos = cantidadPedidos;
+        }
+
+        public Map<String, Integer> getPedidosPorDia() {
+            return pedidosPorDia;
+        }
+
+        public void setPedidosPorDia(Map<String, Integer> pedidosPorDia) {
+            this.pedidosPorDia = pedidosPorDia;
+        }
+
         public List<Caja> getCajas() {
             return cajas;
         }
@@ -292,11 +553,19 @@ public class ReporteService {
             this.cajas = cajas;
         }
 
-        public List<Pedido> getPedidos() {
+        public Map<Long, PedidoRepository.TotalesCaja> getTotalesPorCaja() {
+            return totalesPorCaja;
+        }
+
+        public void setTotalesPorCaja(Map<Long, PedidoRepository.TotalesCaja> totalesPorCaja) {
+            this.totalesPorCaja = totalesPorCaja;
+        }
+
+        public List<PedidoResumen> getPedidos() {
             return pedidos;
         }
 
-        public void setPedidos(List<Pedido> pedidos) {
+        public void setPedidos(List<PedidoResumen> pedidos) {
             this.pedidos = pedidos;
         }
     }
@@ -305,14 +574,16 @@ public class ReporteService {
         private java.util.Date inicio;
         private java.util.Date fin;
         private double totalMensual;
-        private List<Pedido> pedidos;
+        private int cantidadPedidos;
+        private List<PedidoResumen> pedidos;
         private List<SemanaResumen> semanas;
 
-        public ReporteMensual(java.util.Date inicio, java.util.Date fin, double totalMensual, List<Pedido> pedidos,
-                List<SemanaResumen> semanas) {
+        public ReporteMensual(java.util.Date inicio, java.util.Date fin, double totalMensual, int cantidadPedidos,
+                List<PedidoResumen> pedidos, List<SemanaResumen> semanas) {
             this.inicio = inicio;
             this.fin = fin;
             this.totalMensual = totalMensual;
+            this.cantidadPedidos = cantidadPedidos;
             this.pedidos = pedidos;
             this.semanas = semanas;
         }
@@ -341,11 +612,19 @@ public class ReporteService {
             this.totalMensual = totalMensual;
         }
 
-        public List<Pedido> getPedidos() {
+        public int getCantidadPedidos() {
+            return cantidadPedidos;
+        }
+
+        public void setCantidadPedidos(int cantidadPedidos) {
+            this.cantidadPedidos = cantidadPedidos;
+        }
+
+        public List<PedidoResumen> getPedidos() {
             return pedidos;
         }
 
-        public void setPedidos(List<Pedido> pedidos) {
+        public void setPedidos(List<PedidoResumen> pedidos) {
             this.pedidos = pedidos;
         }
 
@@ -357,4 +636,154 @@ public class ReporteService {
             this.semanas = semanas;
         }
     }
-}
\ No newline at end of file
+
+    public static class ReporteProductos {
+        private java.util.Date inicio;
+        private java.util.Date fin;
+        // Ordenados por unidades vendidas
+        private List<VentaProducto> productos;
+        // Ordenados por cantidad consumida del producto base
+        private List<VentaProducto> productosBase;
+
+        public ReporteProductos(java.util.Date inicio, java.util.Date fin, List<VentaProducto> productos,
+                List<VentaProducto> productosBase) {
+            this.inicio = inicio;
+            this.fin = fin;
+            this.productos = productos;
+            this.productosBase = productosBase;
+        }
+
+        public java.util.Date getInicio() {
+            return inicio;
+        }
+
+        public java.util.Date getFin() {
+            return fin;
+        }
+
+        public List<VentaProducto> getProductos() {
+            return productos;
+        }
+
+        public List<VentaProducto> getProductosBase() {
+            return productosBase;
+        }
+
+        public long getTotalUnidades() {
+            return productos.stream().mapToLong(VentaProducto::unidades).sum();
+        }
+
+        public double getTotalIngresos() {
+            return productos.stream().mapToDouble(VentaProducto::ingresos).sum();
+        }
+    }
+
+    public static class ReporteUsuarios {
+        private java.util.Date inicio;
+        private java.util.Date fin;
+        // Ordenados por total cobrado
+        private List<RendimientoUsuario> usuarios;
+
+        public ReporteUsuarios(java.util.Date inicio, java.util.Date fin, List<RendimientoUsuario> usuarios) {
+            this.inicio = inicio;
+            this.fin = fin;
+            this.usuarios = usuarios;
+        }
+
+        public java.util.Date getInicio() {
+            return inicio;
+        }
+
+        public java.util.Date getFin() {
+            return fin;
+        }
+
+        public List<RendimientoUsuario> getUsuarios() {
+            return usuarios;
+        }
+
+        public double getTotalCobrado() {
+            return usuarios.stream().mapToDouble(RendimientoUsuario::totalCobrado).sum();
+        }
+    }
+
+    // Mapa de calor [día de la semana][hora], con el lunes en la fila 0
+    public static class ReporteHorarios {
+        public static final List<String> DIAS = List.of(
+                "Lunes", "Martes", "Miércoles", "Jueves", "Viernes", "Sábado", "Domingo");
+
+        private java.util.Date inicio;
+        private java.util.Date fin;
+        private long[][] cantidades;
+        private double[][] totales;
+        private long maxCantidad;
+
+        public ReporteHorarios(java.util.Date inicio, java.util.Date fin, long[][] cantidades, double[][] totales) {
+            this.inicio = inicio;
+            this.fin = fin;
+            this.cantidades = cantidades;
+            this.totales = totales;
+            for (long[] dia : cantidades) {
+                for (long cantidad : dia) {
+                    maxCantidad = Math.max(maxCantidad, cantidad);
+                }
+            }
+        }
+
+        public java.util.Date getInicio() {
+            return inicio;
+        }
+
+        public java.util.Date getFin() {
+            return fin;
+        }
+
+        public List<String> getDias() {
+            return DIAS;
+        }
+
+        public long getCantidad(int dia, int hora) {
+            return cantidades[dia][hora];
+        }
+
+        public double getTotal(int dia, int hora) {
+            return totales[dia][hora];
+        }
+
+        public long getMaxCantidad() {
+            return maxCantidad;
+        }
+
+        public long getTotalCantidad() {
+            return Arrays.stream(cantidades).flatMapToLong(Arrays::stream).sum();
+        }
+
+        public double getTotalVentas() {
+            return Arrays.stream(totales).flatMapToDouble(Arrays::stream).sum();
+        }
+
+        // Entre 0 y 1, para el color de la celda
+        public double getIntensidad(int dia, int hora) {
+            return maxCantidad == 0 ? 0 : (double) cantidades[dia][hora] / maxCantidad;
+        }
+
+        // Horas desde la primera hasta la última con pedidos en cualquier día, para no mostrar columnas vacías
+        public List<Integer> getHoras() {
+            int primera = 24;
+            int ultima = -1;
+            for (long[] dia : cantidades) {
+                for (int hora = 0; hora < 24; hora++) {
+                    if (dia[hora] > 0) {
+                        primera = Math.min(primera, hora);
+                        ultima = Math.max(ultima, hora);
+                    }
+                }
+            }
+            List<Integer> horas = new ArrayList<>();
+            for (int hora = primera; hora <= ultima; hora++) {
+                horas.add(hora);
+            }
+            return horas;
+        }
+    }
+}
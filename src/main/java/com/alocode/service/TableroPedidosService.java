@@ -0,0 +1,200 @@
+package com.alocode.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.alocode.repository.PedidoRepository;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Eventos del tablero de pedidos por SSE: cada tablero abierto mantiene una conexión y recibe los
+ * pedidos creados, editados, con cambio de estado o pagados, sin recargar la página. Los últimos
+ * eventos se guardan para que un tablero que se reconecta (con Last-Event-ID) reciba los que se
+ * perdió; si ya no están, se le pide recargar.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class TableroPedidosService {
+    private final PedidoRepository pedidoRepository;
+
+    @Value("${alopos.pedidos.tablero.timeout-ms:1800000}")
+    private long timeoutMs;
+
+    @Value("${alopos.pedidos.tablero.eventos-guardados:500}")
+    private int eventosGuardados;
+
+    // Los ids son "arranque-secuencia": un id de antes de reiniciar el servidor no se puede continuar
+    private final String arranque = Long.toString(System.currentTimeMillis(), 36);
+    private long secuencia;
+    private final Deque<Evento> ultimos = new ArrayDeque<>();
+    private final List<SseEmitter> tableros = new CopyOnWriteArrayList<>();
+    private ExecutorService envios;
+    // Ordena las relecturas de la base de datos con la numeración de sus eventos
+    private final Object lecturas = new Object();
+
+    public enum TipoEvento {
+        CREADO("creado"),
+        ACTUALIZADO("actualizado"),
+        ESTADO("estado"),
+        PAGADO("pagado");
+
+        private final String nombre;
+
+        TipoEvento(String nombre) {
+            this.nombre = nombre;
+        }
+    }
+
+    private record Evento(long numero, String nombre, Object datos) {
+    }
+
+    @PostConstruct
+    public void iniciar() {
+        envios = Executors.newSingleThreadExecutor(tarea -> {
+            Thread hilo = new Thread(tarea, "tablero-envios");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+    }
+
+    @PreDestroy
+    public void detener() {
+        envios.shutdownNow();
+    }
+
+    // Id del último evento enviado; la página del tablero lo toma antes de consultar los pedidos
+    public synchronized String getUltimoId() {
+        return arranque + "-" + secuencia;
+    }
+
+    public SseEmitter suscribir(String ultimoId) {
+        SseEmitter emisor = new SseEmitter(timeoutMs);
+        emisor.onCompletion(() -> tableros.remove(emisor));
+        emisor.onTimeout(() -> tableros.remove(emisor));
+        emisor.onError(e -> tableros.remove(emisor));
+        synchronized (this) {
+            if (ultimoId != null && !ultimoId.isBlank()) {
+                Long numero = numeroDe(ultimoId);
+                if (numero == null || numero > secuencia
+                        || (numero < secuencia && (ultimos.isEmpty() || ultimos.peekFirst().numero() > numero + 1))) {
+                    // Se perdieron eventos que ya no están guardados
+                    enviar(emisor, SseEmitter.event().id(getUltimoId()).name("recargar").data(""));
+                } else {
+                    for (Evento evento : ultimos) {
+                        if (evento.numero() > numero) {
+                            enviar(emisor, construir(evento));
+                        }
+                    }
+                }
+            }
+            tableros.add(emisor);
+        }
+        return emisor;
+    }
+
+    /*
+     * Se envía al confirmar la transacción, con la fila leída de la base de datos ya actualizada. La
+     * lectura y la numeración del evento van juntas bajo el bloqueo de lecturas: si dos
+     * confirmaciones del mismo pedido llegan en otro orden, el evento con número mayor es el que leyó
+     * último y el tablero termina con el estado más reciente. Los tableros que se suscriben no
+     * esperan por esa lectura.
+     */
+    public void publicar(TipoEvento tipo, Long pedidoId) {
+        alConfirmar(() -> {
+            synchronized (lecturas) {
+                pedidoRepository.findResumenById(pedidoId).ifPresent(pedido -> difundir(tipo.nombre, pedido));
+            }
+        });
+    }
+
+    // Cambios en bloque (como la cancelación de pendientes de días anteriores): los tableros se recargan
+    public void publicarRecarga() {
+        alConfirmar(() -> difundir("recargar", ""));
+    }
+
+    @Scheduled(fixedDelayString = "${alopos.pedidos.tablero.latido-ms:15000}")
+    public void enviarLatidos() {
+        // Mantiene abiertas las conexiones a través de proxies y detecta los tableros cerrados
+        for (SseEmitter emisor : tableros) {
+            enviar(emisor, SseEmitter.event().comment("latido"));
+        }
+    }
+
+    /*
+     * Bajo el bloqueo solo se numera y guarda el evento y se toman los tableros conectados; el envío
+     * lo hace el hilo de envíos. Así un tablero lento o una conexión a medio cerrar no frena al que
+     * publica (que corre al confirmar la escritura de un pedido), y los eventos salen en orden.
+     */
+    private void difundir(String nombre, Object datos) {
+        synchronized (this) {
+            Evento evento = new Evento(++secuencia, nombre, datos);
+            ultimos.addLast(evento);
+            while (ultimos.size() > eventosGuardados) {
+                ultimos.removeFirst();
+            }
+            // Los que se suscriban después lo reciben con los eventos guardados
+            List<SseEmitter> destinatarios = List.copyOf(tableros);
+            envios.execute(() -> destinatarios.forEach(emisor -> enviar(emisor, construir(evento))));
+        }
+    }
+
+    private SseEmitter.SseEventBuilder construir(Evento evento) {
+        return SseEmitter.event().id(arranque + "-" + evento.numero()).name(evento.nombre()).data(evento.datos());
+    }
+
+    private void enviar(SseEmitter emisor, SseEmitter.SseEventBuilder evento) {
+        try {
+            emisor.send(evento);
+        } catch (IOException | IllegalStateException e) {
+            // El navegador cerró la conexión
+            tableros.remove(emisor);
+        }
+    }
+
+    private Long numeroDe(String id) {
+        int separador = id.lastIndexOf('-');
+        if (separador < 0 || !id.substring(0, separador).equals(arranque)) {
+            return null;
+        }
+        try {
+            return Long.parseLong(id.substring(separador + 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private void alConfirmar(Runnable accion) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            accion.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                try {
+                    accion.run();
+                } catch (RuntimeException e) {
+                    // El cambio ya se confirmó; un tablero desactualizado se corrige al recargar
+                    log.warn("No se pudo notificar el cambio a los tableros", e);
+                }
+            }
+        });
+    }
+}
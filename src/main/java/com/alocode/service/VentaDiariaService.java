@@ -0,0 +1,172 @@
+package com.alocode.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.alocode.model.Pedido;
+import com.alocode.model.VentaDiaria;
+import com.alocode.model.enums.TipoPedido;
+import com.alocode.repository.PedidoRepository;
+import com.alocode.repository.VentaDiariaRepository;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Mantiene la tabla ventas_diarias: una fila por día con las ventas pagadas ese día,
+ * su desglose por tipo de pedido y los pedidos cancelados. Los reportes semanales y
+ * mensuales leen de aquí en lugar de cargar los pedidos.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class VentaDiariaService {
+    private static final LocalDate INICIO_HISTORIAL = LocalDate.of(2000, 1, 1);
+
+    private final VentaDiariaRepository ventaDiariaRepository;
+    private final PedidoRepository pedidoRepository;
+    private final ReporteCache reporteCache;
+
+    // Referencia al proxy para que reconstruir corra en su propia transacción al arrancar
+    @Autowired
+    @Lazy
+    private VentaDiariaService self;
+
+    @Value("${alopos.reportes.reconstruir-ventas-diarias:false}")
+    private boolean reconstruirAlIniciar;
+
+    // Se llama en la misma transacción que pasa el pedido a PAGADO
+    @Transactional
+    public void registrarPago(Pedido pedido) {
+        double cobrado = pedido.getTotal();
+        TipoPedido tipo = pedido.getTipo();
+        acumular(aLocalDate(pedido.getFechaPagado()), 1, cobrado - pedido.getRecargo(), pedido.getRecargo(),
+                tipo == TipoPedido.MESA ? 1 : 0, tipo == TipoPedido.MESA ? cobrado : 0.0,
+                tipo == TipoPedido.LOCAL ? 1 : 0, tipo == TipoPedido.LOCAL ? cobrado : 0.0,
+                tipo == TipoPedido.DELIVERY ? 1 : 0, tipo == TipoPedido.DELIVERY ? cobrado : 0.0,
+                0);
+    }
+
+    // Las cancelaciones se cuentan en el día del pedido
+    @Transactional
+    public void registrarCancelaciones(Collection<Pedido> pedidos) {
+        Map<LocalDate, Long> porDia = pedidos.stream()
+                .collect(Collectors.groupingBy(p -> aLocalDate(p.getFecha()), TreeMap::new, Collectors.counting()));
+        porDia.forEach((dia, cantidad) -> registrarCancelaciones(dia, cantidad.intValue()));
+    }
+
+    // Para cancelaciones en bloque de pendientes de días anteriores (antes de cambiarles el estado)
+    @Transactional
+    public void registrarCancelacionesDePendientesAnterioresA(Date limite) {
+        for (Object[] fila : pedidoRepository.contarPendientesAnterioresAPorDia(limite)) {
+            registrarCancelaciones((LocalDate) fila[0], ((Number) fila[1]).intValue());
+        }
+    }
+
+    public List<VentaDiaria> obtenerEntre(LocalDate inicio, LocalDate fin) {
+        return ventaDiariaRepository.findByFechaBetweenOrderByFechaAsc(inicio, fin);
+    }
+
+    /**
+     * Vuelve a calcular ventas_diarias entre las fechas indicadas (ambas incluidas) a partir de la
+     * tabla de pedidos. Conviene correrlo fuera del horario de atención: un pago registrado mientras
+     * se reconstruye el mismo día puede quedar contado dos veces.
+     */
+    @Transactional
+    public int reconstruir(LocalDate inicio, LocalDate fin) {
+        long comienzo = System.nanoTime();
+        Date desde = aDate(inicio);
+        Date hasta = aDate(fin.plusDays(1));
+
+        Map<LocalDate, VentaDiaria> dias = new TreeMap<>();
+        for (Object[] fila : pedidoRepository.sumarPagadosPorDiaYTipo(desde, hasta)) {
+            VentaDiaria dia = dias.computeIfAbsent((LocalDate) fila[0], VentaDiaria::new);
+            int cantidad = ((Number) fila[2]).intValue();
+            double cobrado = ((Number) fila[3]).doubleValue();
+            double recargos = fila[4] == null ? 0.0 : ((Number) fila[4]).doubleValue();
+            dia.setCantidadPedidos(dia.getCantidadPedidos() + cantidad);
+            dia.setTotalVentas(dia.getTotalVentas() + cobrado - recargos);
+            dia.setTotalRecargos(dia.getTotalRecargos() + recargos);
+            switch ((TipoPedido) fila[1]) {
+                case MESA -> {
+                    dia.setPedidosMesa(dia.getPedidosMesa() + cantidad);
+                    dia.setTotalMesa(dia.getTotalMesa() + cobrado);
+                }
+                case LOCAL -> {
+                    dia.setPedidosLocal(dia.getPedidosLocal() + cantidad);
+                    dia.setTotalLocal(dia.getTotalLocal() + cobrado);
+                }
+                case DELIVERY -> {
+                    dia.setPedidosDelivery(dia.getPedidosDelivery() + cantidad);
+                    dia.setTotalDelivery(dia.getTotalDelivery() + cobrado);
+                }
+            }
+        }
+        for (Object[] fila : pedidoRepository.contarCanceladosPorDia(desde, hasta)) {
+            VentaDiaria dia = dias.computeIfAbsent((LocalDate) fila[0], VentaDiaria::new);
+            dia.setPedidosCancelados(((Number) fila[1]).intValue());
+        }
+
+        reporteCache.invalidar(inicio, fin);
+        ventaDiariaRepository.eliminarEntre(inicio, fin);
+        ventaDiariaRepository.flush();
+        ventaDiariaRepository.saveAll(dias.values());
+
+        log.info("Ventas diarias reconstruidas del {} al {}: {} días en {} ms",
+                inicio, fin, dias.size(), (System.nanoTime() - comienzo) / 1_000_000);
+        return dias.size();
+    }
+
+    @Transactional
+    public int reconstruirTodo() {
+        return reconstruir(INICIO_HISTORIAL, LocalDate.now());
+    }
+
+    // La primera vez (tabla vacía) o si se pide por configuración, se arma desde el historial de pedidos
+    @EventListener(ApplicationReadyEvent.class)
+    public void inicializar() {
+        if (reconstruirAlIniciar || ventaDiariaRepository.count() == 0) {
+            self.reconstruirTodo();
+        }
+    }
+
+    private void registrarCancelaciones(LocalDate dia, int cantidad) {
+        if (cantidad > 0) {
+            acumular(dia, 0, 0.0, 0.0, 0, 0.0, 0, 0.0, 0, 0.0, cantidad);
+        }
+    }
+
+    private void acumular(LocalDate dia, int pagados, double ventas, double recargos,
+            int pedidosMesa, double totalMesa, int pedidosLocal, double totalLocal,
+            int pedidosDelivery, double totalDelivery, int cancelados) {
+        // Todo cambio de pedido que afecta a los reportes pasa por aquí
+        reporteCache.invalidar(dia);
+        if (ventaDiariaRepository.acumular(dia, pagados, ventas, recargos, pedidosMesa, totalMesa,
+                pedidosLocal, totalLocal, pedidosDelivery, totalDelivery, cancelados) == 0) {
+            ventaDiariaRepository.crearSiNoExiste(dia);
+            ventaDiariaRepository.acumular(dia, pagados, ventas, recargos, pedidosMesa, totalMesa,
+                    pedidosLocal, totalLocal, pedidosDelivery, totalDelivery, cancelados);
+        }
+    }
+
+    private static LocalDate aLocalDate(Date fecha) {
+        return fecha.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+    }
+
+    private static Date aDate(LocalDate fecha) {
+        return Date.from(fecha.atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+}
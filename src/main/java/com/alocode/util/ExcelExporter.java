@@ -2,24 +2,59 @@ package com.alocode.util;
 
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import com.alocode.service.ReporteService;
-import com.alocode.model.Pedido;
-import com.alocode.model.DetallePedido;
+import com.alocode.model.PedidoResumen;
+import com.alocode.model.DetalleResumen;
+import com.alocode.model.RendimientoUsuario;
+import com.alocode.model.VentaProducto;
+import com.alocode.repository.PedidoRepository;
 import java.text.SimpleDateFormat;
 import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
 
 public class ExcelExporter {
     private static final String FONT_NAME = "Arial";
     private static final short HEADER_FONT_SIZE = 11;
     private static final short BODY_FONT_SIZE = 10;
     private static final short TITLE_FONT_SIZE = 14;
+    // Con más pedidos que esto se usa el libro en streaming (SXSSF) en lugar de armarlo entero en memoria
+    public static final int FILAS_STREAMING_POR_DEFECTO = 2000;
+    // Filas que el libro en streaming mantiene en memoria; las anteriores van a un temporal comprimido
+    private static final int VENTANA_STREAMING = 100;
     
     public static void exportToExcel(Object reporte, String nombreArchivo, HttpServletResponse response) {
-        String fechaReporte = "";
-        try (Workbook workbook = new XSSFWorkbook()) {
+        List<PedidoResumen> pedidos = pedidosDe(reporte);
+        exportToExcel(reporte, pedidos.iterator(), pedidos.size(), FILAS_STREAMING_POR_DEFECTO, nombreArchivo, response);
+    }
+    
+    /**
+     * Exporta el reporte tomando las filas de pedidos de un iterador que se recorre una sola vez.
+     * cantidadPedidos decide si el libro se arma en memoria o en streaming.
+     */
+    public static void exportToExcel(Object reporte, Iterator<PedidoResumen> pedidos, long cantidadPedidos, int filasStreaming,
+            String nombreArchivo, HttpServletResponse response) {
+        try {
+            response.setContentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+            response.setHeader("Content-Disposition", "attachment; filename=" + nombreFinal(reporte, nombreArchivo));
+            escribir(reporte, pedidos, cantidadPedidos, filasStreaming, response.getOutputStream());
+            response.getOutputStream().flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    public static void escribir(Object reporte, Iterator<PedidoResumen> pedidos, long cantidadPedidos, int filasStreaming,
+            OutputStream salida) throws IOException {
+        // Al cerrarse, el libro en streaming también borra sus archivos temporales
+        try (Workbook workbook = cantidadPedidos > filasStreaming
+                ? new SXSSFWorkbook(null, VENTANA_STREAMING, true)
+                : new XSSFWorkbook()) {
             // Estilos predefinidos
             CellStyle headerStyle = createHeaderStyle(workbook);
             CellStyle titleStyle = createTitleStyle(workbook);
@@ -30,11 +65,6 @@ public class ExcelExporter {
             
             if (reporte instanceof ReporteService.ReporteDiario diario) {
                 Sheet sheet = workbook.createSheet("Reporte Diario");
-                // ...existing code...
-                // Preparar nombre de archivo con fecha (DIA-MES-AÑO)
-                if (diario.getFecha() != null) {
-                    fechaReporte = new SimpleDateFormat("dd-MM-yyyy").format(diario.getFecha());
-                }
                 // Configurar anchos de columnas (en unidades de 1/256 de ancho de carácter)
                 sheet.setColumnWidth(0, 16*256);  // Columna A
                 sheet.setColumnWidth(1, 20*256);  // Columna B
@@ -78,19 +108,21 @@ public class ExcelExporter {
                 
                 // Datos de pedidos
                 // boolean firstPedido = true;
-                for (Pedido p : diario.getPedidos()) {
+                while (pedidos.hasNext()) {
+                    PedidoResumen p = pedidos.next();
                     Row row = sheet.createRow(rowIdx++);
                     row.setHeightInPoints(20);
                     int colIdx = 0;
-                    addCell(row, colIdx++, p.getId(), centeredStyle);
-                    addCell(row, colIdx++, p.getMesa() != null ? String.valueOf(p.getMesa().getNumero()) : "", centeredStyle);
-                    addCell(row, colIdx++, p.getUsuario() != null ? p.getUsuario().getNombre() : "", centeredStyle);
-                    addCell(row, colIdx++, p.getTotal(), centeredCurrencyStyle);
-                    addCell(row, colIdx++, p.getRecargo(), centeredCurrencyStyle);
-                    addCell(row, colIdx++, p.getFechaPagado() != null ? p.getFechaPagado() : null, dateStyle);
+                    addCell(row, colIdx++, p.id(), centeredStyle);
+                    addCell(row, colIdx++, p.mesaNumero() != null ? String.valueOf(p.mesaNumero()) : "", centeredStyle);
+                    addCell(row, colIdx++, p.usuarioNombre() != null ? p.usuarioNombre() : "", centeredStyle);
+                    addCell(row, colIdx++, p.total(), centeredCurrencyStyle);
+                    addCell(row, colIdx++, p.recargo(), centeredCurrencyStyle);
+                    addCell(row, colIdx++, p.fechaPagado(), dateStyle);
 
                     // Detalles del pedido
-                    if (p.getDetalles() != null && !p.getDetalles().isEmpty()) {
+                    List<DetalleResumen> detalles = diario.getDetalles(p.id());
+                    if (!detalles.isEmpty()) {
                         // Título de detalles
                         Row detTitleRow = sheet.createRow(rowIdx++);
                         detTitleRow.setHeightInPoints(20);
@@ -104,14 +136,14 @@ public class ExcelExporter {
                         rowIdx = createTableHeader(sheet, rowIdx, detallesHeaders, headerStyle, 1);
 
                         // Datos de detalles
-                        for (DetallePedido d : p.getDetalles()) {
+                        for (DetalleResumen d : detalles) {
                             Row detRow = sheet.createRow(rowIdx++);
                             detRow.setHeightInPoints(18);
                             colIdx = 1;
-                            addCell(detRow, colIdx++, d.getProducto() != null ? d.getProducto().getNombre() : "", centeredStyle);
-                            addCell(detRow, colIdx++, d.getCantidad(), centeredStyle);
-                            addCell(detRow, colIdx++, d.getPrecioUnitario(), centeredCurrencyStyle);
-                            addCell(detRow, colIdx++, d.getSubtotal(), centeredCurrencyStyle);
+                            addCell(detRow, colIdx++, d.productoNombre() != null ? d.productoNombre() : "", centeredStyle);
+                            addCell(detRow, colIdx++, d.cantidad(), centeredStyle);
+                            addCell(detRow, colIdx++, d.precioUnitario(), centeredCurrencyStyle);
+                            addCell(detRow, colIdx++, d.subtotal(), centeredCurrencyStyle);
                         }
                     }
 
@@ -154,22 +186,16 @@ public class ExcelExporter {
 
                 // Filas por cada caja (día)
                 for (com.alocode.model.Caja caja : semanal.getCajas()) {
+                    PedidoRepository.TotalesCaja totalesCaja = semanal.getTotalesPorCaja().get(caja.getId());
                     Row row = sheet.createRow(rowIdx++);
                     int colIdx = 0;
                     addCell(row, colIdx++, caja.getFecha(), dateStyle);
                     addCell(row, colIdx++, caja.getMontoApertura(), centeredCurrencyStyle);
                     addCell(row, colIdx++, caja.getMontoCierre(), centeredCurrencyStyle);
-                    // Calcular total ventas del día (ventas + recargos)
-                    double totalVentasDia = semanal.getPedidos().stream()
-                        .filter(p -> p.getCaja() != null && p.getCaja().getId().equals(caja.getId()))
-                        .mapToDouble(p -> p.getTotal() + p.getRecargo())
-                        .sum();
-                    addCell(row, colIdx++, totalVentasDia, centeredCurrencyStyle);
+                    // Total cobrado del día: el total de cada pedido ya incluye su recargo
+                    addCell(row, colIdx++, totalesCaja != null ? totalesCaja.getTotalCobrado() : 0.0, centeredCurrencyStyle);
                     // Total pedidos del día
-                    long totalPedidosDia = semanal.getPedidos().stream()
-                        .filter(p -> p.getCaja() != null && p.getCaja().getId().equals(caja.getId()))
-                        .count();
-                    addCell(row, colIdx++, totalPedidosDia, centeredStyle);
+                    addCell(row, colIdx++, totalesCaja != null ? totalesCaja.getCantidadPedidos() : 0L, centeredStyle);
                     // Estado caja
                     String estado = (caja.getMontoCierre() == null) ? "Abierta" : "Cerrada";
                     addCell(row, colIdx++, estado, centeredStyle);
@@ -181,28 +207,18 @@ public class ExcelExporter {
                 // Cabecera de pedidos
                 String[] pedidosHeaders = {"ID Pedido", "Mesa", "Usuario", "Total", "Recargo", "Fecha Pagado"};
                 rowIdx = createTableHeader(sheet, rowIdx, pedidosHeaders, headerStyle);
-                boolean firstPedido = true;
-                for (Pedido p : semanal.getPedidos()) {
+                while (pedidos.hasNext()) {
+                    PedidoResumen p = pedidos.next();
                     // No agregar separador entre pedidos en el reporte semanal
                     Row row = sheet.createRow(rowIdx++);
                     row.setHeightInPoints(20);
                     int colIdx = 0;
-                    addCell(row, colIdx++, p.getId(), centeredStyle);
-                    addCell(row, colIdx++, p.getMesa() != null ? String.valueOf(p.getMesa().getNumero()) : "", centeredStyle);
-                    addCell(row, colIdx++, p.getUsuario() != null ? p.getUsuario().getNombre() : "", centeredStyle);
-                    addCell(row, colIdx++, p.getTotal(), centeredCurrencyStyle);
-                    addCell(row, colIdx++, p.getRecargo(), centeredCurrencyStyle);
-                    addCell(row, colIdx++, p.getFechaPagado() != null ? p.getFechaPagado() : null, dateStyle);
-                }
-
-                // Nombre de archivo con rango de fechas
-                SimpleDateFormat sdf = new SimpleDateFormat("dd-MM-yyyy");
-                String desde = semanal.getInicio() != null ? sdf.format(semanal.getInicio()) : "";
-                String hasta = semanal.getFin() != null ? sdf.format(semanal.getFin()) : "";
-                // Evitar duplicar el rango de fechas en el nombre del archivo
-                String sufijo = "_" + desde + "_a_" + hasta;
-                if (!desde.isEmpty() && !hasta.isEmpty() && (nombreArchivo == null || !nombreArchivo.endsWith(sufijo))) {
-                    nombreArchivo = nombreArchivo + sufijo;
+                    addCell(row, colIdx++, p.id(), centeredStyle);
+                    addCell(row, colIdx++, p.mesaNumero() != null ? String.valueOf(p.mesaNumero()) : "", centeredStyle);
+                    addCell(row, colIdx++, p.usuarioNombre() != null ? p.usuarioNombre() : "", centeredStyle);
+                    addCell(row, colIdx++, p.total(), centeredCurrencyStyle);
+                    addCell(row, colIdx++, p.recargo(), centeredCurrencyStyle);
+                    addCell(row, colIdx++, p.fechaPagado(), dateStyle);
                 }
             } else if (reporte instanceof ReporteService.ReporteMensual mensual) {
                 Sheet sheet = workbook.createSheet("Reporte Mensual");
@@ -254,45 +270,165 @@ public class ExcelExporter {
                 // Cabecera de pedidos
                 String[] pedidosHeaders = {"ID Pedido", "Fecha Pagado", "Total ventas", "Total recargos", "Usuario"};
                 rowIdx = createTableHeader(sheet, rowIdx, pedidosHeaders, headerStyle);
-                for (Pedido p : mensual.getPedidos()) {
+                while (pedidos.hasNext()) {
+                    PedidoResumen p = pedidos.next();
+                    Row row = sheet.createRow(rowIdx++);
+                    int colIdx = 0;
+                    addCell(row, colIdx++, p.id(), centeredStyle);
+                    addCell(row, colIdx++, p.fechaPagado(), dateStyle);
+                    addCell(row, colIdx++, p.total(), centeredCurrencyStyle);
+                    addCell(row, colIdx++, p.recargo(), centeredCurrencyStyle);
+                    addCell(row, colIdx++, p.usuarioNombre() != null ? p.usuarioNombre() : "", centeredStyle);
+                }
+            } else if (reporte instanceof ReporteService.ReporteUsuarios usuarios) {
+                Sheet sheet = workbook.createSheet("Reporte Usuarios");
+                // Anchos de columnas
+                sheet.setColumnWidth(0, 25*256); // Usuario
+                sheet.setColumnWidth(1, 18*256); // Pedidos tomados
+                sheet.setColumnWidth(2, 18*256); // Pedidos cobrados
+                sheet.setColumnWidth(3, 18*256); // Total cobrado
+                sheet.setColumnWidth(4, 18*256); // Ticket promedio
+                sheet.setColumnWidth(5, 22*256); // Minutos hasta el cobro
+
+                int rowIdx = 0;
+                // Título
+                Row titleRow = sheet.createRow(rowIdx++);
+                titleRow.setHeightInPoints(25);
+                Cell titleCell = titleRow.createCell(0);
+                titleCell.setCellValue("REPORTE DE USUARIOS");
+                titleCell.setCellStyle(titleStyle);
+                sheet.addMergedRegion(new CellRangeAddress(0, 0, 0, 5));
+
+                // Info general
+                rowIdx = addGeneralInfo(sheet, rowIdx,
+                    new String[] {"Desde", "Hasta", "Total Cobrado"},
+                    new Object[] {usuarios.getInicio(), usuarios.getFin(), usuarios.getTotalCobrado()},
+                    headerStyle, centeredStyle, centeredCurrencyStyle, dateStyle);
+
+                rowIdx = addSeparatorRow(sheet, rowIdx, 6, separatorStyle);
+                String[] headers = {"Usuario", "Pedidos Tomados", "Pedidos Cobrados", "Total Cobrado",
+                    "Ticket Promedio", "Minutos hasta Cobro"};
+                rowIdx = createTableHeader(sheet, rowIdx, headers, headerStyle);
+                for (RendimientoUsuario usuario : usuarios.getUsuarios()) {
+                    Row row = sheet.createRow(rowIdx++);
+                    int colIdx = 0;
+                    addCell(row, colIdx++, usuario.nombre(), centeredStyle);
+                    addCell(row, colIdx++, usuario.pedidosTomados(), centeredStyle);
+                    addCell(row, colIdx++, usuario.pedidosCobrados(), centeredStyle);
+                    addCell(row, colIdx++, usuario.totalCobrado(), centeredCurrencyStyle);
+                    addCell(row, colIdx++, usuario.ticketPromedio(), centeredCurrencyStyle);
+                    Double minutos = usuario.minutosPromedioCobro();
+                    addCell(row, colIdx++, minutos != null ? Math.round(minutos * 10) / 10.0 : null, centeredStyle);
+                }
+            } else if (reporte instanceof ReporteService.ReporteProductos productos) {
+                Sheet sheet = workbook.createSheet("Reporte Productos");
+                // Anchos de columnas
+                sheet.setColumnWidth(0, 10*256); // Puesto
+                sheet.setColumnWidth(1, 30*256); // Producto
+                sheet.setColumnWidth(2, 18*256); // Unidades
+                sheet.setColumnWidth(3, 18*256); // Ingresos
+                sheet.setColumnWidth(4, 22*256); // Cantidad base consumida
+
+                int rowIdx = 0;
+                // Título
+                Row titleRow = sheet.createRow(rowIdx++);
+                titleRow.setHeightInPoints(25);
+                Cell titleCell = titleRow.createCell(0);
+                titleCell.setCellValue("REPORTE DE PRODUCTOS");
+                titleCell.setCellStyle(titleStyle);
+                sheet.addMergedRegion(new CellRangeAddress(0, 0, 0, 4));
+
+                // Info general
+                rowIdx = addGeneralInfo(sheet, rowIdx,
+                    new String[] {"Desde", "Hasta", "Total Ingresos"},
+                    new Object[] {productos.getInicio(), productos.getFin(), productos.getTotalIngresos()},
+                    headerStyle, centeredStyle, centeredCurrencyStyle, dateStyle);
+
+                // Productos vendidos
+                rowIdx = addSeparatorRow(sheet, rowIdx, 5, separatorStyle);
+                String[] headers = {"Puesto", "Producto", "Unidades", "Ingresos", "Cantidad Base Consumida"};
+                rowIdx = createTableHeader(sheet, rowIdx, headers, headerStyle);
+                int puesto = 1;
+                for (VentaProducto venta : productos.getProductos()) {
                     Row row = sheet.createRow(rowIdx++);
                     int colIdx = 0;
-                    addCell(row, colIdx++, p.getId(), centeredStyle);
-                    addCell(row, colIdx++, p.getFechaPagado(), dateStyle);
-                    addCell(row, colIdx++, p.getTotal(), centeredCurrencyStyle);
-                    addCell(row, colIdx++, p.getRecargo(), centeredCurrencyStyle);
-                    addCell(row, colIdx++, p.getUsuario() != null ? p.getUsuario().getNombre() : "", centeredStyle);
+                    addCell(row, colIdx++, puesto++, centeredStyle);
+                    addCell(row, colIdx++, venta.nombre(), centeredStyle);
+                    addCell(row, colIdx++, venta.unidades(), centeredStyle);
+                    addCell(row, colIdx++, venta.ingresos(), centeredCurrencyStyle);
+                    addCell(row, colIdx++, venta.cantidadBaseConsumida(), centeredStyle);
                 }
 
-                // Nombre de archivo con rango de fechas
-                SimpleDateFormat sdfFile = new SimpleDateFormat("dd-MM-yyyy");
-                String desde = mensual.getInicio() != null ? sdfFile.format(mensual.getInicio()) : "";
-                String hasta = mensual.getFin() != null ? sdfFile.format(mensual.getFin()) : "";
-                String sufijo = "_" + desde + "_a_" + hasta;
-                if (!desde.isEmpty() && !hasta.isEmpty() && (nombreArchivo == null || !nombreArchivo.endsWith(sufijo))) {
-                    nombreArchivo = nombreArchivo + sufijo;
+                // Consumo por producto base (los productos sin base cuentan sus propias unidades)
+                rowIdx = addSeparatorRow(sheet, rowIdx, 5, separatorStyle);
+                String[] baseHeaders = {"Puesto", "Producto Base", "Unidades Vendidas", "Ingresos", "Cantidad Consumida"};
+                rowIdx = createTableHeader(sheet, rowIdx, baseHeaders, headerStyle);
+                puesto = 1;
+                for (VentaProducto venta : productos.getProductosBase()) {
+                    Row row = sheet.createRow(rowIdx++);
+                    int colIdx = 0;
+                    addCell(row, colIdx++, puesto++, centeredStyle);
+                    addCell(row, colIdx++, venta.nombre(), centeredStyle);
+                    addCell(row, colIdx++, venta.unidades(), centeredStyle);
+                    addCell(row, colIdx++, venta.ingresos(), centeredCurrencyStyle);
+                    addCell(row, colIdx++, venta.cantidadBaseConsumida(), centeredStyle);
                 }
             }
             
             // Escribir el archivo
-            String nombreFinal;
-            if (reporte instanceof ReporteService.ReporteDiario && !fechaReporte.isEmpty()) {
-                nombreFinal = nombreArchivo + "_" + fechaReporte + ".xlsx";
-            } else if (reporte instanceof ReporteService.ReporteSemanal || reporte instanceof ReporteService.ReporteMensual) {
-                // Para el reporte semanal y mensual, ya tienen el rango de fechas en nombreArchivo
-                nombreFinal = nombreArchivo + ".xlsx";
+            workbook.write(salida);
+        }
+    }
+    
+    public static String nombreFinal(Object reporte, String nombreArchivo) {
+        if (reporte instanceof ReporteService.ReporteDiario diario) {
+            // Nombre de archivo con fecha (DIA-MES-AÑO)
+            if (diario.getFecha() != null) {
+                return nombreArchivo + "_" + new SimpleDateFormat("dd-MM-yyyy").format(diario.getFecha()) + ".xlsx";
+            }
+            return nombreArchivo + ".xlsx";
+        } else if (reporte instanceof ReporteService.ReporteSemanal || reporte instanceof ReporteService.ReporteMensual
+                || reporte instanceof ReporteService.ReporteProductos || reporte instanceof ReporteService.ReporteUsuarios) {
+            // Nombre de archivo con rango de fechas, sin duplicarlo si ya viene en nombreArchivo
+            Date inicio;
+            Date fin;
+            if (reporte instanceof ReporteService.ReporteSemanal semanal) {
+                inicio = semanal.getInicio();
+                fin = semanal.getFin();
+            } else if (reporte instanceof ReporteService.ReporteMensual mensual) {
+                inicio = mensual.getInicio();
+                fin = mensual.getFin();
+            } else if (reporte instanceof ReporteService.ReporteProductos productos) {
+                inicio = productos.getInicio();
+                fin = productos.getFin();
             } else {
-                // Para otros reportes, mantener la fecha y hora
-                String fechaHora = new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss").format(new Date());
-                nombreFinal = nombreArchivo + "_" + fechaHora + ".xlsx";
+                ReporteService.ReporteUsuarios usuarios = (ReporteService.ReporteUsuarios) reporte;
+                inicio = usuarios.getInicio();
+                fin = usuarios.getFin();
             }
-            response.setContentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
-            response.setHeader("Content-Disposition", "attachment; filename=" + nombreFinal);
-            workbook.write(response.getOutputStream());
-            response.getOutputStream().flush();
-        } catch (IOException e) {
-            e.printStackTrace();
+            SimpleDateFormat sdf = new SimpleDateFormat("dd-MM-yyyy");
+            String desde = inicio != null ? sdf.format(inicio) : "";
+            String hasta = fin != null ? sdf.format(fin) : "";
+            String sufijo = "_" + desde + "_a_" + hasta;
+            if (!desde.isEmpty() && !hasta.isEmpty() && (nombreArchivo == null || !nombreArchivo.endsWith(sufijo))) {
+                nombreArchivo = nombreArchivo + sufijo;
+            }
+            return nombreArchivo + ".xlsx";
+        }
+        // Para otros reportes, mantener la fecha y hora
+        String fechaHora = new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss").format(new Date());
+        return nombreArchivo + "_" + fechaHora + ".xlsx";
+    }
+    
+    private static List<PedidoResumen> pedidosDe(Object reporte) {
+        if (reporte instanceof ReporteService.ReporteDiario diario) {
+            return diario.getPedidos();
+        } else if (reporte instanceof ReporteService.ReporteSemanal semanal) {
+            return semanal.getPedidos();
+        } else if (reporte instanceof ReporteService.ReporteMensual mensual) {
+            return mensual.getPedidos();
         }
+        return List.of();
     }
     
     // Métodos auxiliares para estilos
@@ -0,0 +1,126 @@
+package com.alocode.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.alocode.model.Caja;
+import com.alocode.model.Usuario;
+import com.alocode.model.enums.EstadoCaja;
+import com.alocode.repository.CajaRepository;
+
+import jakarta.persistence.EntityManager;
+
+// Apertura de caja con un historial grande de cajas; los datos se descartan al terminar cada prueba
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Transactional
+class CajaServiceAperturaTests {
+
+	private static final int CAJAS_HISTORICAS = 10_000;
+	private static final int CAJAS_ABIERTAS_ANTERIORES = 3;
+
+	@Autowired
+	private CajaService cajaService;
+
+	@Autowired
+	private CajaRepository cajaRepository;
+
+	@Autowired
+	private EntityManager entityManager;
+
+	private Statistics estadisticas;
+	private Usuario usuario;
+
+	@BeforeEach
+	void crearHistorialDeCajas() {
+		estadisticas = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+		LocalDate hoy = LocalDate.now();
+
+		// Una caja de hoy que ya esté abierta impediría abrir otra
+		cajaRepository.findByEstado(EstadoCaja.ABIERTA).forEach(caja -> caja.setEstado(EstadoCaja.CERRADA));
+
+		usuario = new Usuario();
+		usuario.setNombre("Prueba");
+		usuario.setUsername("prueba-" + System.nanoTime());
+		usuario.setPassword("x");
+		entityManager.persist(usuario);
+
+		for (int i = 1; i <= CAJAS_HISTORICAS; i++) {
+			boolean abierta = i <= CAJAS_ABIERTAS_ANTERIORES;
+			Caja caja = new Caja();
+			caja.setFecha(aDate(hoy.minusDays(i)));
+			caja.setHoraApertura(new Date());
+			caja.setMontoApertura(100.0);
+			caja.setEstado(abierta ? EstadoCaja.ABIERTA : EstadoCaja.CERRADA);
+			caja.setUsuario(usuario);
+			caja.setTotalVentas(50.0);
+			caja.setTotalRecargos(5.0);
+			entityManager.persist(caja);
+			if (i % 500 == 0) {
+				entityManager.flush();
+				entityManager.clear();
+				usuario = entityManager.getReference(Usuario.class, usuario.getId());
+			}
+		}
+		entityManager.flush();
+		entityManager.clear();
+		usuario = entityManager.find(Usuario.class, usuario.getId());
+	}
+
+	@Test
+	void consultaDeCajasAbiertasCoincideConElRecorridoCompleto() {
+		Date inicioHoy = aDate(LocalDate.now());
+		// Lo que hacía abrirCaja antes: recorrer todas las cajas y filtrar en memoria
+		Set<Long> recorridas = cajaRepository.findAll().stream()
+				.filter(c -> c.getEstado() == EstadoCaja.ABIERTA && c.getFecha().before(inicioHoy))
+				.map(Caja::getId)
+				.collect(Collectors.toSet());
+
+		Set<Long> consultadas = cajaRepository.findCajasAbiertasDeDiasAnteriores().stream()
+				.map(Caja::getId)
+				.collect(Collectors.toSet());
+
+		assertEquals(CAJAS_ABIERTAS_ANTERIORES, consultadas.size());
+		assertEquals(recorridas, consultadas);
+	}
+
+	@Test
+	void abrirCajaCierraLasAnterioresSinLeerElHistorial() {
+		List<Long> anteriores = cajaRepository.findCajasAbiertasDeDiasAnteriores().stream().map(Caja::getId).toList();
+		entityManager.clear();
+		estadisticas.clear();
+
+		Caja nueva = cajaService.abrirCaja(200.0, usuario);
+		entityManager.flush();
+
+		// Solo se cargan las cajas abiertas anteriores (y sus usuarios), no las 10.000 del historial
+		assertTrue(estadisticas.getEntityLoadCount() < 20,
+				"Entidades cargadas: " + estadisticas.getEntityLoadCount());
+		assertEquals(EstadoCaja.ABIERTA, nueva.getEstado());
+		entityManager.clear();
+		for (Long id : anteriores) {
+			Caja cerrada = cajaRepository.findById(id).orElseThrow();
+			assertEquals(EstadoCaja.CERRADA, cerrada.getEstado());
+			assertEquals(155.0, cerrada.getMontoCierre(), 1e-9);
+		}
+		assertTrue(cajaRepository.findCajasAbiertasDeDiasAnteriores().isEmpty());
+	}
+
+	private static Date aDate(LocalDate dia) {
+		return Date.from(dia.atStartOfDay(ZoneId.systemDefault()).toInstant());
+	}
+}
@@ -0,0 +1,145 @@
+package com.alocode.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Date;
+import java.util.List;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.alocode.model.Caja;
+import com.alocode.model.DetallePedido;
+import com.alocode.model.Mesa;
+import com.alocode.model.Pedido;
+import com.alocode.model.Producto;
+import com.alocode.model.Rol;
+import com.alocode.model.Usuario;
+import com.alocode.model.enums.EstadoCaja;
+import com.alocode.model.enums.EstadoMesa;
+import com.alocode.model.enums.EstadoPedido;
+import com.alocode.model.enums.TipoPedido;
+
+import jakarta.persistence.EntityManager;
+
+// Cantidad de sentencias SQL del tablero y del detalle de pedidos; los datos se descartan al terminar cada prueba
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Transactional
+class PedidoServiceConsultasTests {
+
+	private static final int PEDIDOS_ABIERTOS = 50;
+
+	@Autowired
+	private PedidoService pedidoService;
+
+	@Autowired
+	private EntityManager entityManager;
+
+	private Statistics estadisticas;
+	private Long ultimoPedidoId;
+
+	@BeforeEach
+	void crearPedidosAbiertos() {
+		estadisticas = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+		long sufijo = System.nanoTime();
+
+		Usuario usuario = new Usuario();
+		usuario.setNombre("Prueba");
+		usuario.setUsername("prueba-" + sufijo);
+		usuario.setPassword("x");
+		for (String nombre : List.of("A", "B")) {
+			Rol rol = new Rol();
+			rol.setNombre("PRUEBA_" + nombre + "_" + sufijo % 100000);
+			entityManager.persist(rol);
+			usuario.getRoles().add(rol);
+		}
+		entityManager.persist(usuario);
+
+		Caja caja = new Caja();
+		caja.setFecha(new Date());
+		caja.setHoraApertura(new Date());
+		caja.setMontoApertura(0.0);
+		caja.setEstado(EstadoCaja.ABIERTA);
+		caja.setUsuario(usuario);
+		entityManager.persist(caja);
+
+		Producto base = producto("Pollo " + sufijo, null);
+		Producto derivado = producto("Cuarto " + sufijo, base);
+
+		for (int i = 0; i < PEDIDOS_ABIERTOS; i++) {
+			Mesa mesa = new Mesa();
+			mesa.setNumero(900000 + i);
+			mesa.setCapacidad(4);
+			mesa.setEstado(EstadoMesa.OCUPADA);
+			entityManager.persist(mesa);
+
+			Pedido pedido = new Pedido();
+			pedido.setFecha(new Date());
+			pedido.setTipo(TipoPedido.MESA);
+			pedido.setEstado(EstadoPedido.PENDIENTE);
+			pedido.setMesa(mesa);
+			pedido.setUsuario(usuario);
+			pedido.setCaja(caja);
+			pedido.setTotal(20.0);
+			for (Producto producto : List.of(base, derivado)) {
+				DetallePedido detalle = new DetallePedido();
+				detalle.setPedido(pedido);
+				detalle.setProducto(producto);
+				detalle.setProductoBase(producto.getProductoBase());
+				detalle.setCantidad(1);
+				detalle.setPrecioUnitario(10.0);
+				detalle.setSubtotal(10.0);
+				pedido.getDetalles().add(detalle);
+			}
+			entityManager.persist(pedido);
+			ultimoPedidoId = pedido.getId();
+		}
+		entityManager.flush();
+		entityManager.clear();
+	}
+
+	@Test
+	void tableroDePedidosAbiertosEnUnaSolaConsulta() {
+		estadisticas.clear();
+
+		List<Pedido> pedidos = pedidoService.obtenerPedidosPendientes();
+		for (Pedido pedido : pedidos) {
+			pedido.getMesa().getNumero();
+			pedido.getUsuario().getNombre();
+			pedido.getCaja().getUsuario().getNombre();
+		}
+
+		assertEquals(1, estadisticas.getPrepareStatementCount());
+	}
+
+	@Test
+	void detalleDePedidoConSusProductos() {
+		estadisticas.clear();
+
+		Pedido pedido = pedidoService.obtenerPedidoPorId(ultimoPedidoId).orElseThrow();
+		for (DetallePedido detalle : pedido.getDetalles()) {
+			detalle.getProducto().getNombre();
+		}
+
+		// Los roles del usuario no deben multiplicar las filas de detalles
+		assertEquals(2, pedido.getDetalles().size());
+		assertEquals(1, estadisticas.getPrepareStatementCount());
+	}
+
+	private Producto producto(String nombre, Producto base) {
+		Producto producto = new Producto();
+		producto.setNombre(nombre);
+		producto.setPrecio(10.0);
+		producto.setStock(100.0);
+		producto.setStockOcupado(0.0);
+		producto.setProductoBase(base);
+		producto.setFactorConversion(base == null ? 1.0 : 0.25);
+		entityManager.persist(producto);
+		return producto;
+	}
+}
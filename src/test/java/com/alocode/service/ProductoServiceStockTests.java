@@ -0,0 +1,153 @@
+package com.alocode.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.alocode.model.DetallePedido;
+import com.alocode.model.Producto;
+import com.alocode.repository.ProductoRepository;
+
+// Reservas concurrentes sobre el mismo producto base: cada hilo confirma su propia transacción
+@SpringBootTest
+class ProductoServiceStockTests {
+
+	private static final int HILOS = 16;
+	private static final int INTENTOS_POR_HILO = 25;
+	private static final double STOCK_BASE = 10.0;
+	private static final double FACTOR = 0.25;
+	private static final int RESERVAS_MEDIDAS = 800;
+	// Con 16 hilos sobre la misma fila no se espera ganar, pero tampoco caer a menos de la mitad
+	private static final double RENDIMIENTO_MINIMO = 0.5;
+
+	@Autowired
+	private ProductoService productoService;
+
+	@Autowired
+	private ProductoRepository productoRepository;
+
+	private Producto base;
+	private Producto derivado;
+
+	@BeforeEach
+	void crearProductos() {
+		long sufijo = System.nanoTime();
+		base = new Producto();
+		base.setNombre("Pollo " + sufijo);
+		base.setPrecio(40.0);
+		base.setStock(STOCK_BASE);
+		base.setStockOcupado(0.0);
+		base.setEsProductoBase(true);
+		base = productoRepository.save(base);
+
+		derivado = new Producto();
+		derivado.setNombre("Cuarto " + sufijo);
+		derivado.setPrecio(10.0);
+		derivado.setStock(0.0);
+		derivado.setStockOcupado(0.0);
+		derivado.setProductoBase(base);
+		derivado.setFactorConversion(FACTOR);
+		derivado = productoRepository.save(derivado);
+	}
+
+	@AfterEach
+	void borrarProductos() {
+		productoRepository.deleteById(derivado.getId());
+		productoRepository.deleteById(base.getId());
+	}
+
+	@Test
+	void reservasConcurrentesNoVendenMasDelStock() throws Exception {
+		CountDownLatch largada = new CountDownLatch(1);
+		ExecutorService ejecutor = Executors.newFixedThreadPool(HILOS);
+		List<Future<Integer>> hilos = new ArrayList<>();
+		for (int i = 0; i < HILOS; i++) {
+			hilos.add(ejecutor.submit(() -> {
+				largada.await();
+				int reservadas = 0;
+				for (int intento = 0; intento < INTENTOS_POR_HILO; intento++) {
+					try {
+						productoService.reservarStock(List.of(linea()));
+						reservadas++;
+					} catch (IllegalStateException e) {
+						// Stock insuficiente
+					}
+				}
+				return reservadas;
+			}));
+		}
+		largada.countDown();
+		int reservadas = 0;
+		for (Future<Integer> hilo : hilos) {
+			reservadas += hilo.get(60, TimeUnit.SECONDS);
+		}
+		ejecutor.shutdown();
+
+		Producto resultado = productoRepository.findById(base.getId()).orElseThrow();
+		// 10 pollos alcanzan exactamente para 40 cuartos
+		assertEquals((int) (STOCK_BASE / FACTOR), reservadas);
+		assertEquals(STOCK_BASE, resultado.getStockOcupado(), 1e-9);
+		assertTrue(resultado.getStockOcupado() <= resultado.getStock());
+	}
+
+	@Test
+	void reservasPorSegundoSeSostienenConDieciseisHilos() throws Exception {
+		base.setStock(1_000_000.0);
+		base = productoRepository.save(base);
+		// Calentamiento: la primera tanda paga la carga de clases y la preparación de sentencias
+		reservar(1, RESERVAS_MEDIDAS / 4);
+
+		double unHilo = reservar(1, RESERVAS_MEDIDAS);
+		double dieciseisHilos = reservar(HILOS, RESERVAS_MEDIDAS / HILOS);
+
+		Producto resultado = productoRepository.findById(base.getId()).orElseThrow();
+		assertEquals((RESERVAS_MEDIDAS / 4 + 2 * RESERVAS_MEDIDAS) * FACTOR, resultado.getStockOcupado(), 1e-9);
+		assertTrue(dieciseisHilos >= unHilo * RENDIMIENTO_MINIMO,
+				String.format("Reservas por segundo: 1 hilo %.0f, %d hilos %.0f", unHilo, HILOS, dieciseisHilos));
+	}
+
+	// Reserva de a una línea desde varios hilos a la vez y devuelve las reservas por segundo
+	private double reservar(int hilos, int reservasPorHilo) throws Exception {
+		CountDownLatch largada = new CountDownLatch(1);
+		ExecutorService ejecutor = Executors.newFixedThreadPool(hilos);
+		List<Future<?>> tareas = new ArrayList<>();
+		for (int i = 0; i < hilos; i++) {
+			tareas.add(ejecutor.submit(() -> {
+				largada.await();
+				for (int n = 0; n < reservasPorHilo; n++) {
+					productoService.reservarStock(List.of(linea()));
+				}
+				return null;
+			}));
+		}
+		long inicio = System.nanoTime();
+		largada.countDown();
+		for (Future<?> tarea : tareas) {
+			tarea.get(60, TimeUnit.SECONDS);
+		}
+		long nanos = System.nanoTime() - inicio;
+		ejecutor.shutdown();
+		return hilos * reservasPorHilo * 1e9 / nanos;
+	}
+
+	private DetallePedido linea() {
+		DetallePedido detalle = new DetallePedido();
+		detalle.setProducto(derivado);
+		detalle.setProductoBase(base);
+		detalle.setCantidad(1);
+		return detalle;
+	}
+}